@@ -0,0 +1,154 @@
+#!/usr/bin/env node
+
+// (C) Copyright 2015 Moodle Pty Ltd.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+// This script measures the cold startup of the app installed in a connected Android device. Each run force stops the
+// app, launches it with "am start -W" and reads the native startup timeline logged when the first page finishes.
+// Run it with the build before and after a change, and compare the medians: save the results of the first build with
+// --output, and pass them with --baseline when measuring the second one.
+//
+// Usage: npm run benchmark:startup -- [--package com.moodle.moodlemobile] [--runs 10] [--output results.json]
+//     [--baseline before.json]
+
+const { execFileSync } = require('child_process');
+const { readFileSync, writeFileSync } = require('fs');
+
+const TIMELINE_TIMEOUT = 30000;
+const args = process.argv.slice(2);
+const packageName = getArgument('--package', 'com.moodle.moodlemobile');
+const runs = Number(getArgument('--runs', '10'));
+const outputPath = getArgument('--output', '');
+const baselinePath = getArgument('--baseline', '');
+
+const component = adb(['shell', 'cmd', 'package', 'resolve-activity', '--brief', packageName]).trim().split('\n').pop();
+const results = [];
+
+for (let run = 1; run <= runs; run++) {
+    adb(['shell', 'am', 'force-stop', packageName]);
+    adb(['logcat', '-c']);
+
+    const startOutput = adb(['shell', 'am', 'start', '-S', '-W', '-n', component]);
+    const totalTime = Number((/TotalTime:\s*(\d+)/.exec(startOutput) || [])[1]);
+    const timeline = waitForTimeline();
+    const result = { totalTime, ...summarizeTimeline(timeline) };
+
+    results.push(result);
+    console.log(`Run ${run}/${runs}: ` + Object.keys(result).map(key => `${key}=${result[key]}`).join(' '));
+}
+
+const medians = {};
+for (const key of Object.keys(results[0] || {})) {
+    medians[key] = median(results.map(result => result[key]).filter(value => typeof value === 'number' && !isNaN(value)));
+}
+
+console.log('Medians (ms): ' + Object.keys(medians).map(key => `${key}=${medians[key]}`).join(' '));
+
+if (outputPath) {
+    writeFileSync(outputPath, JSON.stringify({ packageName, runs: results, medians }, null, 4));
+}
+
+if (baselinePath) {
+    const baseline = JSON.parse(readFileSync(baselinePath, 'utf8')).medians || {};
+
+    console.log('Change from baseline (ms): ' + Object.keys(medians).map(key => {
+        const difference = medians[key] - baseline[key];
+
+        return `${key}=${difference > 0 ? '+' : ''}${difference}`;
+    }).join(' '));
+}
+
+/**
+ * Get the value of a command line argument.
+ *
+ * @param name Argument name.
+ * @param defaultValue Value to use if the argument isn't set.
+ * @returns Argument value.
+ */
+function getArgument(name, defaultValue) {
+    const index = args.indexOf(name);
+
+    return index >= 0 && index + 1 < args.length ? args[index + 1] : defaultValue;
+}
+
+/**
+ * Run an adb command.
+ *
+ * @param adbArgs Arguments.
+ * @returns Output of the command.
+ */
+function adb(adbArgs) {
+    return execFileSync('adb', adbArgs, { encoding: 'utf8' });
+}
+
+/**
+ * Wait until the app logs the startup timeline.
+ *
+ * @returns Startup timeline, null if it wasn't logged in time.
+ */
+function waitForTimeline() {
+    const end = Date.now() + TIMELINE_TIMEOUT;
+
+    while (Date.now() < end) {
+        const log = adb(['logcat', '-d', '-s', 'StartupTimeline:I']);
+        const match = /Startup timeline: (\{.*\})/.exec(log);
+        if (match) {
+            return JSON.parse(match[1]);
+        }
+
+        execFileSync('sleep', ['1']);
+    }
+
+    return null;
+}
+
+/**
+ * Get the startup steps of a timeline, in milliseconds since the process started.
+ *
+ * @param timeline Startup timeline.
+ * @returns Steps.
+ */
+function summarizeTimeline(timeline) {
+    if (!timeline) {
+        return { firstPageFinished: NaN };
+    }
+
+    const marks = {};
+    for (const mark of timeline.marks || []) {
+        marks[mark.name] = mark.time;
+    }
+
+    return {
+        firstPluginInitialize: marks.firstPluginInitialize,
+        firstPageFinished: marks.firstPageFinished,
+        pluginsInitialized: Object.keys(marks).filter(name => name.endsWith('.initialize')).length,
+    };
+}
+
+/**
+ * Get the median of some values.
+ *
+ * @param values Values.
+ * @returns Median, NaN if there are no values.
+ */
+function median(values) {
+    if (!values.length) {
+        return NaN;
+    }
+
+    const sorted = values.slice().sort((a, b) => a - b);
+    const middle = Math.floor(sorted.length / 2);
+
+    return sorted.length % 2 ? sorted[middle] : (sorted[middle - 1] + sorted[middle]) / 2;
+}
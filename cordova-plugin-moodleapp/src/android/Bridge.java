@@ -0,0 +1,423 @@
+// (C) Copyright 2015 Moodle Pty Ltd.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.moodle.moodlemobile;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.CordovaPlugin;
+import org.apache.cordova.CordovaWebView;
+import org.apache.cordova.PluginResult;
+
+public class Bridge extends CordovaPlugin {
+
+    private static final String TAG = "Bridge";
+    private static final long BATCH_ENTRY_TIMEOUT = 30000;
+    private static final List<String> BATCH_PLUGINS = Arrays.asList("SecureStorage", "Diagnostic", "InstallReferrer");
+    // Actions that keep their callback or wait for the user, they'd block a batch lane. Actions that restart or leave
+    // the app would do it while other entries are running, and the batch would never be answered.
+    private static final List<String> BATCH_EXCLUDED_ACTIONS = Arrays.asList(
+        "Diagnostic.watchState",
+        "Diagnostic.requestRuntimePermission",
+        "Diagnostic.requestRuntimePermissions",
+        "Diagnostic.requestMicrophoneAuthorization",
+        "Diagnostic.restart",
+        "Diagnostic.switchToSettings"
+    );
+    // Actions that modify data. If a batch has any of them, the entries of that plugin run in order, so reads in the
+    // same batch see the writes that come before them.
+    private static final List<String> BATCH_ORDERED_ACTIONS = Arrays.asList(
+        "SecureStorage.store",
+        "SecureStorage.delete",
+        "SecureStorage.compareAndSet",
+        "SecureStorage.update",
+        "SecureStorage.deleteCollection"
+    );
+    private static final int PING_MAX_SAMPLES = 4096;
+
+    private final SampleSeries pingSendDelays = new SampleSeries(PING_MAX_SAMPLES);
+    private final SampleSeries pingNativeTimes = new SampleSeries(PING_MAX_SAMPLES);
+    private final SampleSeries pingReplyDelays = new SampleSeries(PING_MAX_SAMPLES);
+    private final SampleSeries pingRoundTrips = new SampleSeries(PING_MAX_SAMPLES);
+
+    @Override
+    protected void pluginInitialize() {
+        StartupTimeline.markPluginInitialize(TAG);
+        FlightRecorder.start(this.cordova.getActivity());
+    }
+
+    @Override
+    public boolean execute(String action, JSONArray args, CallbackContext callbackContext) {
+        long receivedAt = System.currentTimeMillis();
+        long receivedAtNanos = SystemClock.elapsedRealtimeNanos();
+        StartupTimeline.markFirstExecute(TAG);
+        boolean traced = Tracing.beginSection(TAG, action);
+        long start = SystemClock.elapsedRealtime();
+        boolean failed = false;
+
+        try {
+            switch (action) {
+                case "batch":
+                    this.batch(args.getJSONArray(0), callbackContext);
+
+                    return true;
+                case "ping":
+                    this.ping(args.optString(0), args.optDouble(1, Double.NaN), receivedAt, receivedAtNanos, callbackContext);
+
+                    return true;
+                case "getPingStats":
+                    callbackContext.success(this.getPingStats(args.optJSONArray(0), args.optBoolean(1, false)));
+
+                    return true;
+            }
+        } catch (Throwable e) {
+            failed = true;
+            Log.e(TAG, "Failed executing action: " + action, e);
+            callbackContext.error(e.getMessage());
+        } finally {
+            FlightRecorder.recordAction(TAG, action, SystemClock.elapsedRealtime() - start, failed);
+            if (traced) {
+                Tracing.endSection();
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Execute several plugin actions with a single bridge call.
+     * Each entry runs in its own task of the thread pool, plugins in a batch can execute actions concurrently. If a
+     * plugin has an action that modifies data in the batch, all its entries run in order in a single task instead.
+     * Plugins are resolved in the bridge thread before running the entries, because the plugin manager creates plugins
+     * lazily and isn't thread safe.
+     *
+     * @param entries List of entries, each one with the plugin name, the action and its arguments.
+     * @param callbackContext The callback context used when calling back into JavaScript.
+     */
+    private void batch(final JSONArray entries, final CallbackContext callbackContext) throws JSONException {
+        final JSONObject[] results = new JSONObject[entries.length()];
+        Map<String, List<Integer>> pluginEntries = new LinkedHashMap<String, List<Integer>>();
+        Map<String, Boolean> orderedPlugins = new HashMap<String, Boolean>();
+        final Map<String, CordovaPlugin> instances = new HashMap<String, CordovaPlugin>();
+
+        for (int i = 0; i < entries.length(); i++) {
+            JSONObject entry = entries.getJSONObject(i);
+            String plugin = entry.optString("plugin");
+            String action = plugin + "." + entry.optString("action");
+
+            if (!BATCH_PLUGINS.contains(plugin)) {
+                results[i] = getErrorResult("Plugin '" + plugin + "' can't be used in a batch.");
+                continue;
+            }
+            if (BATCH_EXCLUDED_ACTIONS.contains(action)) {
+                results[i] = getErrorResult("Action '" + action + "' can't be used in a batch.");
+                continue;
+            }
+
+            if (!instances.containsKey(plugin)) {
+                instances.put(plugin, this.webView.getPluginManager().getPlugin(plugin));
+            }
+            if (instances.get(plugin) == null) {
+                results[i] = getErrorResult("Plugin '" + plugin + "' not found.");
+                continue;
+            }
+
+            if (!pluginEntries.containsKey(plugin)) {
+                pluginEntries.put(plugin, new ArrayList<Integer>());
+            }
+            pluginEntries.get(plugin).add(i);
+            if (BATCH_ORDERED_ACTIONS.contains(action)) {
+                orderedPlugins.put(plugin, true);
+            }
+        }
+
+        // Each lane is a list of entries run in order in a pool thread.
+        final List<List<Integer>> lanes = new ArrayList<List<Integer>>();
+        for (Map.Entry<String, List<Integer>> plugin : pluginEntries.entrySet()) {
+            if (orderedPlugins.containsKey(plugin.getKey())) {
+                lanes.add(plugin.getValue());
+                continue;
+            }
+
+            for (int index : plugin.getValue()) {
+                lanes.add(Arrays.asList(index));
+            }
+        }
+
+        if (lanes.isEmpty()) {
+            callbackContext.success(new JSONArray(Arrays.asList(results)));
+
+            return;
+        }
+
+        final AtomicInteger pendingLanes = new AtomicInteger(lanes.size());
+
+        for (final List<Integer> lane : lanes) {
+            final CordovaPlugin instance = instances.get(entries.getJSONObject(lane.get(0)).optString("plugin"));
+
+            this.cordova.getThreadPool().execute(new Runnable() {
+                @Override
+                public void run() {
+                    for (int index : lane) {
+                        results[index] = runBatchEntry(instance, entries.optJSONObject(index));
+                    }
+
+                    if (pendingLanes.decrementAndGet() == 0) {
+                        callbackContext.success(new JSONArray(Arrays.asList(results)));
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Execute a batch entry and wait for its result.
+     *
+     * @param instance Plugin that handles the entry, already resolved in the bridge thread.
+     * @param entry Batch entry.
+     * @return Entry result.
+     */
+    private JSONObject runBatchEntry(CordovaPlugin instance, JSONObject entry) {
+        String plugin = entry.optString("plugin");
+        String action = entry.optString("action");
+
+        try {
+            JSONArray args = entry.optJSONArray("args");
+            BatchCallbackContext context = new BatchCallbackContext(this.webView);
+
+            if (!instance.execute(action, args != null ? args : new JSONArray(), context) && !context.hasResult()) {
+                return getErrorResult("Invalid action: " + plugin + "." + action);
+            }
+
+            JSONObject result = context.awaitResult(BATCH_ENTRY_TIMEOUT);
+
+            return result != null ? result : getErrorResult("Timeout waiting for " + plugin + "." + action);
+        } catch (Throwable e) {
+            Log.e(TAG, "Failed executing batch entry: " + plugin + "." + action, e);
+
+            return getErrorResult(e.getMessage());
+        }
+    }
+
+    /**
+     * Reply to a ping, used to measure the bridge overhead.
+     * Durations in the native side use a monotonic clock. Delays between JS and native use wall clock times, because it's
+     * the only clock both sides share.
+     *
+     * @param payload Payload sent by JS, only used to measure the cost of bigger messages.
+     * @param sentAt Wall clock time when JS sent the ping, in milliseconds.
+     * @param receivedAt Wall clock time when the plugin received the ping, in milliseconds.
+     * @param receivedAtNanos Monotonic time when the plugin received the ping, in nanoseconds.
+     * @param callbackContext The callback context used when calling back into JavaScript.
+     */
+    private void ping(String payload, double sentAt, long receivedAt, long receivedAtNanos, CallbackContext callbackContext)
+            throws JSONException {
+        JSONObject result = new JSONObject();
+        result.put("payloadSize", payload.length());
+        result.put("receivedAt", receivedAt);
+
+        if (!Double.isNaN(sentAt)) {
+            pingSendDelays.add(receivedAt - sentAt);
+        }
+
+        double nativeTime = (SystemClock.elapsedRealtimeNanos() - receivedAtNanos) / 1e6;
+        pingNativeTimes.add(nativeTime);
+        result.put("nativeTime", nativeTime);
+        result.put("repliedAt", System.currentTimeMillis());
+
+        callbackContext.success(result);
+    }
+
+    /**
+     * Get the percentiles of the ping measures.
+     *
+     * @param samples Samples measured in JS since the last call, with the round trip and reply delay of each ping.
+     * @param reset Whether to discard all the samples after calculating the stats.
+     * @return Stats for each measure.
+     */
+    private JSONObject getPingStats(JSONArray samples, boolean reset) throws JSONException {
+        if (samples != null) {
+            for (int i = 0; i < samples.length(); i++) {
+                JSONObject sample = samples.getJSONObject(i);
+                if (sample.has("roundTrip")) {
+                    pingRoundTrips.add(sample.getDouble("roundTrip"));
+                }
+                if (sample.has("replyDelay")) {
+                    pingReplyDelays.add(sample.getDouble("replyDelay"));
+                }
+            }
+        }
+
+        JSONObject stats = new JSONObject();
+        stats.put("roundTrip", pingRoundTrips.getStats());
+        stats.put("sendDelay", pingSendDelays.getStats());
+        stats.put("nativeTime", pingNativeTimes.getStats());
+        stats.put("replyDelay", pingReplyDelays.getStats());
+
+        if (reset) {
+            pingRoundTrips.clear();
+            pingSendDelays.clear();
+            pingNativeTimes.clear();
+            pingReplyDelays.clear();
+        }
+
+        return stats;
+    }
+
+    private static JSONObject getErrorResult(Object error) {
+        JSONObject result = new JSONObject();
+
+        try {
+            result.put("success", false);
+            result.put("error", error != null ? error : JSONObject.NULL);
+        } catch (JSONException e) {
+            // Shouldn't happen.
+        }
+
+        return result;
+    }
+
+    /**
+     * Fixed-size series of samples. When full, the oldest samples are overwritten.
+     */
+    private static class SampleSeries {
+
+        private final double[] samples;
+        private int count = 0;
+
+        SampleSeries(int capacity) {
+            this.samples = new double[capacity];
+        }
+
+        synchronized void add(double sample) {
+            samples[count % samples.length] = sample;
+            count++;
+        }
+
+        synchronized void clear() {
+            count = 0;
+        }
+
+        /**
+         * Get the count, mean, max and p50/p90/p99 of the samples.
+         */
+        synchronized JSONObject getStats() throws JSONException {
+            int size = Math.min(count, samples.length);
+            double[] sorted = Arrays.copyOf(samples, size);
+            Arrays.sort(sorted);
+
+            double sum = 0;
+            for (double sample : sorted) {
+                sum += sample;
+            }
+
+            JSONObject stats = new JSONObject();
+            stats.put("count", size);
+            if (size > 0) {
+                stats.put("mean", sum / size);
+                stats.put("p50", getPercentile(sorted, 0.5));
+                stats.put("p90", getPercentile(sorted, 0.9));
+                stats.put("p99", getPercentile(sorted, 0.99));
+                stats.put("max", sorted[size - 1]);
+            }
+
+            return stats;
+        }
+
+        private static double getPercentile(double[] sorted, double percentile) {
+            return sorted[Math.min(sorted.length - 1, (int) Math.ceil(percentile * sorted.length) - 1)];
+        }
+
+    }
+
+    /**
+     * Callback context that keeps the first result sent by a plugin instead of sending it to JavaScript.
+     * Results that keep the callback are rejected, the batch can't deliver more than one result per entry.
+     */
+    private static class BatchCallbackContext extends CallbackContext {
+
+        private final CountDownLatch latch = new CountDownLatch(1);
+        private JSONObject result;
+
+        BatchCallbackContext(CordovaWebView webView) {
+            super("Bridge.batch", webView);
+        }
+
+        @Override
+        public void sendPluginResult(PluginResult pluginResult) {
+            synchronized (this) {
+                if (this.result != null || pluginResult.getStatus() == PluginResult.Status.NO_RESULT.ordinal()) {
+                    return;
+                }
+
+                try {
+                    Object value;
+                    switch (pluginResult.getMessageType()) {
+                        case PluginResult.MESSAGE_TYPE_STRING:
+                            value = pluginResult.getStrMessage();
+                            break;
+                        case PluginResult.MESSAGE_TYPE_JSON:
+                        case PluginResult.MESSAGE_TYPE_NUMBER:
+                        case PluginResult.MESSAGE_TYPE_BOOLEAN:
+                            value = new JSONTokener(pluginResult.getMessage()).nextValue();
+                            break;
+                        default:
+                            value = JSONObject.NULL;
+                    }
+
+                    boolean success = pluginResult.getStatus() == PluginResult.Status.OK.ordinal();
+                    if (pluginResult.getKeepCallback()) {
+                        this.result = getErrorResult("Actions that send more than one result can't be used in a batch.");
+                    } else {
+                        this.result = success ? new JSONObject().put("success", true).put("result", value) : getErrorResult(value);
+                    }
+                } catch (JSONException e) {
+                    this.result = getErrorResult(e.getMessage());
+                }
+            }
+
+            latch.countDown();
+        }
+
+        synchronized boolean hasResult() {
+            return this.result != null;
+        }
+
+        JSONObject awaitResult(long timeout) throws InterruptedException {
+            latch.await(timeout, TimeUnit.MILLISECONDS);
+
+            synchronized (this) {
+                return this.result;
+            }
+        }
+
+    }
+
+}
@@ -21,19 +21,30 @@ import static android.content.Context.BATTERY_SERVICE;
 
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileReader;
 import java.io.InputStreamReader;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.List;
 import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 import org.apache.cordova.CordovaWebView;
 import org.apache.cordova.CallbackContext;
 import org.apache.cordova.CordovaPlugin;
 import org.apache.cordova.CordovaInterface;
+import org.apache.cordova.PluginResult;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -41,21 +52,39 @@ import org.json.JSONObject;
 import android.Manifest;
 import android.annotation.TargetApi;
 import android.app.Activity;
+import android.app.ActivityManager;
 import android.app.AlarmManager;
 import android.app.PendingIntent;
+import android.app.usage.UsageStatsManager;
+import android.content.BroadcastReceiver;
+import android.content.IntentFilter;
 import android.content.SharedPreferences;
 import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageInfo;
 import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.TrafficStats;
+import android.net.NetworkCapabilities;
 import android.net.Uri;
 import android.os.BatteryManager;
 import android.os.Build;
+import android.os.Environment;
+import android.os.PowerManager;
+import android.os.StatFs;
+import android.os.storage.StorageManager;
+import android.os.SystemClock;
 import android.util.Log;
 
 import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.provider.Settings;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+import android.system.StructStat;
+import android.telephony.TelephonyManager;
+import android.webkit.WebView;
 
 
 import androidx.core.app.ActivityCompat;
@@ -192,12 +221,48 @@ public class Diagnostic extends CordovaPlugin{
     /*
      * Map of permission request code to callback context
      */
-    protected HashMap<String, CallbackContext> callbackContexts = new HashMap<String, CallbackContext>();
+    protected final ConcurrentHashMap<String, CallbackContext> callbackContexts = new ConcurrentHashMap<String, CallbackContext>();
 
     /*
      * Map of permission request code to permission statuses
      */
-    protected HashMap<String, JSONObject> permissionStatuses = new HashMap<String, JSONObject>();
+    protected final ConcurrentHashMap<String, JSONObject> permissionStatuses = new ConcurrentHashMap<String, JSONObject>();
+
+    /*
+     * Cache of permission statuses, cleared when they can change: on resume and when a request is made or completes
+     */
+    protected final ConcurrentHashMap<String, String> permissionStatusCache = new ConcurrentHashMap<String, String>();
+
+    /*
+     * Incremented every time the permission status cache is cleared, so statuses computed before aren't cached after
+     */
+    protected final AtomicLong permissionStatusGeneration = new AtomicLong();
+
+    /*
+     * Permissions that have been requested at least once, loaded from preferences on first use
+     */
+    protected volatile Set<String> requestedPermissions;
+
+    /*
+     * Permissions declared in the app manifest, indexed on first use
+     */
+    protected volatile Set<String> manifestPermissions;
+
+    /*
+     * Lock used to load the preferences and the permission sets. It isn't the plugin monitor, so loading them doesn't
+     * block the power, network and sampler actions
+     */
+    protected final Object permissionsLock = new Object();
+
+    /*
+     * Target SDK version of the app, read on first use
+     */
+    protected int buildTargetSdkVersion = -1;
+
+    /*
+     * Map of state name to the callback context listening to its changes
+     */
+    protected final ConcurrentHashMap<String, CallbackContext> stateListeners = new ConcurrentHashMap<String, CallbackContext>();
 
 
     /**
@@ -229,6 +294,44 @@ public class Diagnostic extends CordovaPlugin{
     public static final String CPU_ARCH_MIPS = "MIPS";
     public static final String CPU_ARCH_MIPS_64 = "MIPS_64";
 
+    /**
+     * Directory where the kernel exposes the CPU topology
+     */
+    protected static final String CPU_SYS_DIR = "/sys/devices/system/cpu/";
+
+    /**
+     * Names of the states that can be watched from JS
+     */
+    protected static final String STATE_POWER = "power";
+    protected static final String STATE_NETWORK = "network";
+    protected static final String STATE_BACKGROUND = "background";
+
+    /**
+     * Default time budget of the self benchmark, in milliseconds
+     */
+    protected static final long SELF_BENCHMARK_DEFAULT_BUDGET = 3000;
+
+    /**
+     * Maximum time to wait for the flight recorder file to be mapped, in milliseconds
+     */
+    protected static final long FLIGHT_RECORDER_MAP_TIMEOUT = 5000;
+
+    /**
+     * Default interval and number of samples kept by the resource sampler
+     */
+    protected static final long RESOURCE_SAMPLER_DEFAULT_INTERVAL = 5000;
+    protected static final int RESOURCE_SAMPLER_CAPACITY = 720;
+
+    /**
+     * Maximum number of traffic checkpoints open at the same time
+     */
+    protected static final int MAX_TRAFFIC_CHECKPOINTS = 100;
+
+    /**
+     * Minimum time between thermal headroom queries, the system rate-limits them
+     */
+    protected static final long THERMAL_HEADROOM_MIN_INTERVAL = 10000;
+
     protected static final String externalStorageClassName = "cordova.plugins.Diagnostic_External_Storage";
     protected static final Integer GET_EXTERNAL_SD_CARD_DETAILS_PERMISSION_REQUEST = 1000;
 
@@ -237,23 +340,98 @@ public class Diagnostic extends CordovaPlugin{
      *************/
 
     /**
-     * Singleton class instance
+     * Singleton class instance. The plugin isn't loaded on startup, so it's null until JS calls it for the first time.
+     * Nothing in the plugin depends on it, it's only kept for other native code.
      */
-    public static Diagnostic instance = null;
+    public static volatile Diagnostic instance = null;
 
-    boolean debugEnabled = false;
+    volatile boolean debugEnabled = false;
 
 
     /**
-     * Current Cordova callback context (on this thread)
+     * Current Cordova callback context (on this thread), only set while an action is executed.
      */
-    protected CallbackContext currentContext;
+    protected final ThreadLocal<CallbackContext> currentContext = new ThreadLocal<CallbackContext>();
 
     protected Context applicationContext;
 
-    protected SharedPreferences sharedPref;
+    protected volatile SharedPreferences sharedPref;
     protected SharedPreferences.Editor editor;
 
+    /**
+     * Memory details that don't change while the process is alive, computed on first use.
+     */
+    protected ActivityManager activityManager;
+    protected ActivityManager.MemoryInfo memoryInfo;
+    protected boolean isLowRamDevice;
+    protected int memoryClass;
+    protected int largeMemoryClass;
+    protected int mediaPerformanceClass;
+
+    /**
+     * CPU topology, parsed on first use.
+     */
+    protected JSONObject cpuProfile;
+
+    /**
+     * Power state, kept up to date by broadcasts and listeners once tracking has started.
+     */
+    protected PowerManager powerManager;
+    protected BroadcastReceiver powerStateReceiver;
+    protected Object thermalStatusListener;
+    protected int batteryLevel = -1;
+    protected boolean isCharging;
+    protected String chargePlug = "none";
+    protected boolean isPowerSaveMode;
+    protected boolean isDeviceIdleMode;
+    protected int thermalStatus;
+    protected float thermalHeadroom = Float.NaN;
+    protected long thermalHeadroomTime;
+
+    /**
+     * Default network state, kept up to date by a network callback once tracking has started.
+     */
+    protected ConnectivityManager connectivityManager;
+    protected ConnectivityManager.NetworkCallback networkCallback;
+    protected boolean isNetworkConnected;
+    protected String networkTransport = "none";
+    protected boolean isNetworkMetered;
+    protected boolean isNetworkRoaming;
+    protected boolean isNetworkValidated;
+    protected int linkDownstreamBandwidthKbps;
+    protected int linkUpstreamBandwidthKbps;
+
+    /**
+     * Background execution state. Only some of its values are broadcast, the rest are read again when the app resumes.
+     */
+    protected BroadcastReceiver backgroundStateReceiver;
+    protected String lastBackgroundState;
+
+    /**
+     * Traffic counters of the open checkpoints: time, received bytes, transmitted bytes, received packets and
+     * transmitted packets.
+     */
+    protected final ConcurrentHashMap<String, long[]> trafficCheckpoints = new ConcurrentHashMap<String, long[]>();
+
+    /**
+     * Resource sampler, created on first use. It has its own lock, the wrappers don't lock the plugin.
+     */
+    protected volatile ResourceSampler resourceSampler;
+    protected final Object resourceSamplerLock = new Object();
+
+    /**
+     * Pool used to calculate directory sizes in parallel, and cached sizes of the directories already walked.
+     * Only one walk uses the cache at a time, they're serialized with its lock.
+     */
+    protected ForkJoinPool directorySizePool;
+    protected final ConcurrentHashMap<String, DirectoryUsage> directoryUsageCache = new ConcurrentHashMap<String, DirectoryUsage>();
+    protected final Object directoryUsageLock = new Object();
+
+    /**
+     * Hidden ConnectivityManager method used to check mobile data before Android 8.
+     */
+    protected Method getMobileDataEnabledMethod;
+
     /*************
      * Public API
      ************/
@@ -276,13 +454,22 @@ public class Diagnostic extends CordovaPlugin{
      */
     public void initialize(CordovaInterface cordova, CordovaWebView webView) {
         Log.d(TAG, "initialize()");
+        StartupTimeline.markPluginInitialize(TAG);
+        FlightRecorder.start(cordova.getActivity());
         instance = this;
 
-        applicationContext = this.cordova.getActivity().getApplicationContext();
-        sharedPref = cordova.getActivity().getSharedPreferences(TAG, Activity.MODE_PRIVATE);
-        editor = sharedPref.edit();
+        applicationContext = cordova.getActivity().getApplicationContext();
 
         super.initialize(cordova, webView);
+
+        // Preferences are only needed by permission requests, load them in the background.
+        cordova.getThreadPool().execute(new Runnable() {
+            @Override
+            public void run() {
+                getRequestedPermissions();
+                getManifestPermissions();
+            }
+        });
     }
 
     /**
@@ -294,12 +481,21 @@ public class Diagnostic extends CordovaPlugin{
      * @return                  True if the action was valid, false if not.
      */
     public boolean execute(String action, JSONArray args, CallbackContext callbackContext) throws JSONException {
-        currentContext = callbackContext;
+        StartupTimeline.markFirstExecute(TAG);
+        currentContext.set(callbackContext);
+        StrictModeMonitor.applyToCurrentThread();
+        boolean traced = Tracing.beginSection(TAG, action);
+        long start = SystemClock.elapsedRealtime();
+        boolean failed = false;
 
         try {
             if (action.equals("enableDebug")){
                 debugEnabled = true;
                 logDebug("Debug enabled");
+                StrictModeMonitor.enable(applicationContext);
+                callbackContext.success();
+            } else if (action.equals("setTracingEnabled")){
+                Tracing.setEnabled(args.getBoolean(0));
                 callbackContext.success();
             } else if (action.equals("switchToSettings")){
                 switchToAppSettings();
@@ -321,6 +517,8 @@ public class Diagnostic extends CordovaPlugin{
                 this.getPermissionAuthorizationStatus(args);
             } else if(action.equals("getPermissionsAuthorizationStatus")) {
                 this.getPermissionsAuthorizationStatus(args);
+            } else if(action.equals("getAllPermissionStatuses")) {
+                callbackContext.success(getAllPermissionStatuses());
             } else if(action.equals("requestRuntimePermission")) {
                 this.requestRuntimePermission(args);
             } else if(action.equals("requestRuntimePermissions")) {
@@ -345,21 +543,75 @@ public class Diagnostic extends CordovaPlugin{
                 callbackContext.success(getDeviceOSVersion());
             } else if(action.equals("getBuildOSVersion")) {
                 callbackContext.success(getBuildOSVersion());
+            } else if(action.equals("getMemoryProfile")) {
+                callbackContext.success(getMemoryProfile());
+            } else if(action.equals("getCpuProfile")) {
+                callbackContext.success(getCpuProfile());
+            } else if(action.equals("getPowerState")) {
+                callbackContext.success(getPowerState());
+            } else if(action.equals("getStorageProfile")) {
+                this.getStorageProfile(args.optBoolean(0, false), callbackContext);
+            } else if(action.equals("runSelfBenchmark")) {
+                this.runSelfBenchmark(args.optBoolean(0, false), args.optLong(1, SELF_BENCHMARK_DEFAULT_BUDGET), callbackContext);
+            } else if(action.equals("getNetworkState")) {
+                callbackContext.success(getNetworkState());
+            } else if(action.equals("getBackgroundState")) {
+                callbackContext.success(getBackgroundState());
+            } else if(action.equals("startResourceSampler")) {
+                startResourceSampler(args.optLong(0, RESOURCE_SAMPLER_DEFAULT_INTERVAL));
+                callbackContext.success();
+            } else if(action.equals("stopResourceSampler")) {
+                stopResourceSampler();
+                callbackContext.success();
+            } else if(action.equals("getTrafficStats")) {
+                callbackContext.success(trafficCountersToJSON(getTrafficCounters()));
+            } else if(action.equals("startTrafficCheckpoint")) {
+                callbackContext.success(startTrafficCheckpoint(args.getString(0)));
+            } else if(action.equals("stopTrafficCheckpoint")) {
+                callbackContext.success(stopTrafficCheckpoint(args.getString(0)));
+            } else if(action.equals("getStrictModeViolations")) {
+                callbackContext.success(StrictModeMonitor.toJSON(args.optBoolean(0, false)));
+            } else if(action.equals("getResourceSeries")) {
+                callbackContext.success(getResourceSeries(args.optBoolean(0, false)));
+            } else if(action.equals("getPreviousSessionLog")) {
+                getPreviousSessionLog(callbackContext);
+            } else if(action.equals("getStartupTimeline")) {
+                callbackContext.success(StartupTimeline.toJSON());
+            } else if(action.equals("watchState")) {
+                this.watchState(args.getString(0), callbackContext);
+            } else if(action.equals("unwatchState")) {
+                this.unwatchState(args.getString(0));
+                callbackContext.success();
             } else {
                 handleError("Invalid action");
                 return false;
             }
         }catch(Exception e ) {
+            failed = true;
             handleError("Exception occurred: ".concat(e.getMessage()));
             return false;
+        } finally {
+            // Actions may run in pool threads, don't keep the context reachable from them once finished.
+            currentContext.remove();
+            FlightRecorder.recordAction(TAG, action, SystemClock.elapsedRealtime() - start, failed);
+            if (traced) {
+                Tracing.endSection();
+            }
         }
         return true;
     }
 
+    /**
+     * Restarts the app.
+     * The mode can be "cold" (restart the process), "warm" (recreate the activity) or "soft" (reload the WebView document).
+     * For backwards compatibility, a boolean is also accepted: true for cold and false for warm.
+     */
     public void restart(JSONArray args) throws Exception{
-        boolean cold = args.getBoolean(0);
-        if(cold){
+        Object mode = args.get(0);
+        if(Boolean.TRUE.equals(mode) || "cold".equals(mode)){
             doColdRestart();
+        }else if("soft".equals(mode)){
+            doSoftRestart();
         }else{
             doWarmRestart();
         }
@@ -394,7 +646,7 @@ public class Diagnostic extends CordovaPlugin{
     public void getPermissionsAuthorizationStatus(JSONArray args) throws Exception{
         JSONArray permissions = args.getJSONArray(0);
         JSONObject statuses = _getPermissionsAuthorizationStatus(jsonArrayToStringArray(permissions));
-        currentContext.success(statuses);
+        currentContext.get().success(statuses);
     }
 
     public void getPermissionAuthorizationStatus(JSONArray args) throws Exception{
@@ -402,7 +654,7 @@ public class Diagnostic extends CordovaPlugin{
         JSONArray permissions = new JSONArray();
         permissions.put(permission);
         JSONObject statuses = _getPermissionsAuthorizationStatus(jsonArrayToStringArray(permissions));
-        currentContext.success(statuses.getString(permission));
+        currentContext.get().success(statuses.getString(permission));
     }
 
     public void requestRuntimePermissions(JSONArray args) throws Exception{
@@ -494,19 +746,39 @@ public class Diagnostic extends CordovaPlugin{
         return false;
     }
 
-    // https://stackoverflow.com/a/12864897/777265
+    /**
+     * Checks if mobile data is enabled.
+     * Android 8+ uses TelephonyManager. If that isn't allowed, the hidden ConnectivityManager method is used before
+     * Android 9 (looked up only once). From Android 9 hidden APIs are blocked, so it's assumed to be disabled.
+     * @return Whether mobile data is enabled, false if it can't be determined.
+     */
     public boolean isMobileDataEnabled(){
-        boolean mobileDataEnabled = false; // Assume disabled
-        ConnectivityManager cm = (ConnectivityManager) cordova.getContext().getSystemService(Context.CONNECTIVITY_SERVICE);
+        if(Build.VERSION.SDK_INT >= 26){ // Android 8
+            try {
+                TelephonyManager tm = (TelephonyManager) applicationContext.getSystemService(Context.TELEPHONY_SERVICE);
+                return tm.isDataEnabled();
+            } catch (Exception e) {
+                logDebug(e.getMessage());
+            }
+        }
+
+        if(Build.VERSION.SDK_INT >= 28){ // Android 9
+            return false; // Assume disabled
+        }
+
+        // https://stackoverflow.com/a/12864897/777265
         try {
-            Class cmClass = Class.forName(cm.getClass().getName());
-            Method method = cmClass.getDeclaredMethod("getMobileDataEnabled");
-            method.setAccessible(true);
-            mobileDataEnabled = (Boolean)method.invoke(cm);
+            ConnectivityManager cm = (ConnectivityManager) cordova.getContext().getSystemService(Context.CONNECTIVITY_SERVICE);
+            if(getMobileDataEnabledMethod == null){
+                getMobileDataEnabledMethod = cm.getClass().getDeclaredMethod("getMobileDataEnabled");
+                getMobileDataEnabledMethod.setAccessible(true);
+            }
+            return (Boolean)getMobileDataEnabledMethod.invoke(cm);
         } catch (Exception e) {
             logDebug(e.getMessage());
         }
-        return mobileDataEnabled;
+
+        return false; // Assume disabled
     }
 
     /************
@@ -571,7 +843,7 @@ public class Diagnostic extends CordovaPlugin{
      * @param errorMsg Error message to pass to the JS error handler
      */
     public void handleError(String errorMsg) {
-        handleError(errorMsg, currentContext);
+        handleError(errorMsg, currentContext.get());
     }
 
     /**
@@ -587,7 +859,7 @@ public class Diagnostic extends CordovaPlugin{
         if (callbackContexts.containsKey(sRequestId)) {
             context = callbackContexts.get(sRequestId);
         }else{
-            context = currentContext;
+            context = currentContext.get();
         }
         handleError(errorMsg, context);
         clearRequest(requestId);
@@ -600,27 +872,36 @@ public class Diagnostic extends CordovaPlugin{
             if(!permissionsMap.containsKey(permission)){
                 throw new Exception("Permission name '"+permission+"' is not a valid permission");
             }
-            String androidPermission = permissionsMap.get(permission);
-            Log.v(TAG, "Get authorisation status for "+androidPermission);
-            boolean granted = hasRuntimePermission(androidPermission);
-            if(granted || isPermissionImplicitlyGranted(permission)){
-                statuses.put(permission, Diagnostic.STATUS_GRANTED);
-            }else{
-                boolean showRationale = shouldShowRequestPermissionRationale(this.cordova.getActivity(), androidPermission);
-                if(!showRationale){
-                    if(isPermissionRequested(permission)){
-                        statuses.put(permission, Diagnostic.STATUS_DENIED_ALWAYS);
-                    }else{
-                        statuses.put(permission, Diagnostic.STATUS_NOT_REQUESTED);
-                    }
-                }else{
-                    statuses.put(permission, Diagnostic.STATUS_DENIED_ONCE);
+            String status = permissionStatusCache.get(permission);
+            if(status == null){
+                long generation = permissionStatusGeneration.get();
+                status = getPermissionAuthorizationStatus(permission);
+                permissionStatusCache.put(permission, status);
+                if(permissionStatusGeneration.get() != generation){
+                    // The cache was cleared while computing the status, it may be stale.
+                    permissionStatusCache.remove(permission, status);
                 }
             }
+            statuses.put(permission, status);
         }
         return statuses;
     }
 
+    protected String getPermissionAuthorizationStatus(String permission) throws Exception{
+        String androidPermission = permissionsMap.get(permission);
+        Log.v(TAG, "Get authorisation status for "+androidPermission);
+        boolean granted = hasRuntimePermission(androidPermission);
+        if(granted || isPermissionImplicitlyGranted(permission)){
+            return Diagnostic.STATUS_GRANTED;
+        }
+
+        boolean showRationale = shouldShowRequestPermissionRationale(this.cordova.getActivity(), androidPermission);
+        if(showRationale){
+            return Diagnostic.STATUS_DENIED_ONCE;
+        }
+        return isPermissionRequested(permission) ? Diagnostic.STATUS_DENIED_ALWAYS : Diagnostic.STATUS_NOT_REQUESTED;
+    }
+
     protected void _requestRuntimePermissions(JSONArray permissions, int requestId) throws Exception{
         JSONObject currentPermissionsStatuses = _getPermissionsAuthorizationStatus(jsonArrayToStringArray(permissions));
         JSONArray permissionsToRequest = new JSONArray();
@@ -654,6 +935,7 @@ public class Diagnostic extends CordovaPlugin{
         }
         if(permissionsToRequest.length() > 0){
             Log.v(TAG, "Requesting permissions");
+            Tracing.beginAsyncSection(TAG, "requestRuntimePermissions", requestId);
             requestPermissions(this, requestId, jsonArrayToStringArray(permissionsToRequest));
 
         }else{
@@ -687,22 +969,25 @@ public class Diagnostic extends CordovaPlugin{
     }
 
     protected int storeCurrentContextByRequestId(){
-        return storeContextByRequestId(currentContext);
+        return storeContextByRequestId(currentContext.get());
     }
 
     protected int storeContextByRequestId(CallbackContext callbackContext){
-        String requestId = generateRandomRequestId();
-        callbackContexts.put(requestId, callbackContext);
+        String requestId = generateRandomRequestId(callbackContext);
         permissionStatuses.put(requestId, new JSONObject());
         return Integer.valueOf(requestId);
     }
 
-    protected String generateRandomRequestId(){
+    /**
+     * Generates a request ID not in use and reserves it for a callback context.
+     * The check and the reservation are atomic, so concurrent requests can't get the same ID.
+     */
+    protected String generateRandomRequestId(CallbackContext callbackContext){
         String requestId = null;
 
         while(requestId == null){
             requestId = generateRandom();
-            if(callbackContexts.containsKey(requestId)){
+            if(callbackContexts.putIfAbsent(requestId, callbackContext) != null){
                 requestId = null;
             }
         }
@@ -781,9 +1066,7 @@ public class Diagnostic extends CordovaPlugin{
         try {
             java.lang.reflect.Method method = cordova.getClass().getMethod("requestPermissions", org.apache.cordova.CordovaPlugin.class ,int.class, java.lang.String[].class);
             method.invoke(cordova, plugin, requestCode, permissions);
-            for(String permission : permissions){
-                setPermissionRequested(permissionsMap.get(permission));
-            }
+            setPermissionsRequested(permissions);
         } catch (NoSuchMethodException e) {
             throw new Exception("requestPermissions() method not found in CordovaInterface implementation of Cordova v" + CordovaWebView.CORDOVA_VERSION);
         }
@@ -818,14 +1101,38 @@ public class Diagnostic extends CordovaPlugin{
      * Performs a warm app restart - restarts only Cordova main activity
      */
     protected void doWarmRestart() {
+        final CallbackContext context = currentContext.get();
         cordova.getActivity().runOnUiThread(new Runnable() {
             @Override
             public void run() {
                 try {
                     logInfo("Warm restarting main activity");
-                    instance.cordova.getActivity().recreate();
+                    cordova.getActivity().recreate();
+                } catch (Exception ex) {
+                    handleError("Unable to warm restart main activity: " + ex.getMessage(), context);
+                }
+            }
+        });
+    }
+
+    /**
+     * Performs a soft app restart - reloads only the WebView document.
+     * The process, the plugin instances and their caches are kept. The callback is called before reloading because the
+     * page that made the call won't exist afterwards, the reload duration is available in the startup timeline.
+     */
+    protected void doSoftRestart() {
+        final CallbackContext context = currentContext.get();
+        cordova.getActivity().runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    logInfo("Soft restarting WebView");
+                    FlightRecorder.recordEvent(TAG, "softRestart");
+                    StartupTimeline.markSoftRestartStart();
+                    context.success();
+                    ((WebView) webView.getView()).reload();
                 } catch (Exception ex) {
-                    handleError("Unable to warm restart main activity: " + ex.getMessage());
+                    handleError("Unable to soft restart WebView: " + ex.getMessage(), context);
                 }
             }
         });
@@ -839,8 +1146,11 @@ public class Diagnostic extends CordovaPlugin{
         String baseError = "Unable to cold restart application: ";
         try {
             logInfo("Cold restarting application");
-            Activity activity = instance.cordova.getActivity();
+            Activity activity = cordova.getActivity();
             if (activity != null) {
+                FlightRecorder.recordEvent(TAG, "coldRestart");
+                FlightRecorder.flush();
+
                 // Systems at 29/Q and later don't allow relaunch, but System.exit(0) on
                 // all supported systems will relaunch ... but by killing the process, then
                 // restarting the process with the back stack intact. We must make sure that
@@ -870,7 +1180,7 @@ public class Diagnostic extends CordovaPlugin{
         }
 
 
-        if (abi == "armeabi") {
+        if (abi.equals("armeabi")) {
             arch = CPU_ARCH_ARMv6;
         } else if (abi.equals("armeabi-v7a")) {
             arch = CPU_ARCH_ARMv7;
@@ -889,140 +1199,1257 @@ public class Diagnostic extends CordovaPlugin{
         return arch;
     }
 
-    protected void setPermissionRequested(String permission){
-        editor.putBoolean(permission, true);
-        boolean success = editor.commit();
-        if(!success){
-            handleError("Failed to set permission requested flag for " + permission);
-        }
-    }
-
-    protected boolean isPermissionRequested(String permission){
-        return sharedPref.getBoolean(permission, false);
-    }
-
-    protected int getCurrentBatteryLevel(){
-        BatteryManager bm = (BatteryManager) cordova.getContext().getApplicationContext().getSystemService(BATTERY_SERVICE);
-        return bm.getIntProperty(BatteryManager.BATTERY_PROPERTY_CAPACITY);
-    }
-
-    // https://stackoverflow.com/a/18237962/777265
-    protected boolean hasBuildPermission(String permission)
-    {
-        try {
-            PackageInfo info = this.cordova.getActivity().getPackageManager().getPackageInfo(this.cordova.getContext().getPackageName(), PackageManager.GET_PERMISSIONS);
-            if (info.requestedPermissions != null) {
-                for (String p : info.requestedPermissions) {
-                    if (p.equals("android.permission."+permission)) {
-                        return true;
+    /**
+     * Get the CPU topology of the device: supported ABIs, core counts and the max frequency of each core, grouped in clusters.
+     * The possible cores and the frequency clusters are read from sysfs only once. The online cores and the cores
+     * available to the VM are refreshed on each call.
+     */
+    public synchronized JSONObject getCpuProfile() throws Exception{
+        if(cpuProfile == null){
+            JSONObject details = new JSONObject();
+            details.put("architecture", getCPUArchitecture());
+            details.put("abis", stringArrayToJsonArray(Build.SUPPORTED_ABIS));
+
+            List<Integer> possibleCores = parseCpuList(readSysFile(CPU_SYS_DIR + "possible"));
+            details.put("cores", possibleCores.size());
+
+            // Cores sharing the same max frequency belong to the same cluster (big.LITTLE and similar layouts).
+            TreeMap<Long, JSONArray> clusterCores = new TreeMap<Long, JSONArray>();
+            JSONArray maxFrequencies = new JSONArray();
+            for(int core : possibleCores){
+                long maxFrequency = 0;
+                String rawFrequency = readSysFile(CPU_SYS_DIR + "cpu" + core + "/cpufreq/cpuinfo_max_freq");
+                if(rawFrequency != null){
+                    try {
+                        maxFrequency = Long.parseLong(rawFrequency);
+                    } catch (NumberFormatException e) {
+                        logDebug("Invalid max frequency for core " + core + ": " + rawFrequency);
                     }
                 }
+                maxFrequencies.put(maxFrequency);
+
+                if(!clusterCores.containsKey(maxFrequency)){
+                    clusterCores.put(maxFrequency, new JSONArray());
+                }
+                clusterCores.get(maxFrequency).put(core);
             }
-        } catch (Exception e) {
-            e.printStackTrace();
+            details.put("maxFrequencies", maxFrequencies);
+
+            JSONArray clusters = new JSONArray();
+            for(Map.Entry<Long, JSONArray> entry : clusterCores.entrySet()){
+                JSONObject cluster = new JSONObject();
+                cluster.put("maxFrequency", entry.getKey());
+                cluster.put("cores", entry.getValue());
+                clusters.put(cluster);
+            }
+            details.put("clusters", clusters);
+            details.put("isBigLittle", clusters.length() > 1);
+
+            cpuProfile = details;
         }
-        return false;
-    }
 
-    public boolean isAirplaneModeEnabled() {
-        return Settings.Global.getInt(this.cordova.getActivity().getContentResolver(),
-                Settings.Global.AIRPLANE_MODE_ON, 0) != 0;
+        // Return a copy, the cached profile mustn't change while it's being serialized.
+        JSONObject details = new JSONObject(cpuProfile.toString());
+        // Cores are brought online and offline all the time, they're read on each call.
+        details.put("onlineCores", parseCpuList(readSysFile(CPU_SYS_DIR + "online")).size());
+        details.put("availableCores", Runtime.getRuntime().availableProcessors());
+        return details;
     }
 
-    public JSONObject getDeviceOSVersion() throws Exception{
+    /**
+     * Get the power state of the device: battery, charging, battery saver, doze and thermal status.
+     * Values come from the broadcasts and listeners registered on first use, not from per-call service queries.
+     */
+    public synchronized JSONObject getPowerState() throws Exception{
+        startPowerStateTracking();
+
+        if(Build.VERSION.SDK_INT >= 30 && SystemClock.elapsedRealtime() - thermalHeadroomTime > THERMAL_HEADROOM_MIN_INTERVAL){ // Android 11
+            thermalHeadroom = powerManager.getThermalHeadroom(0);
+            thermalHeadroomTime = SystemClock.elapsedRealtime();
+        }
+
         JSONObject details = new JSONObject();
-        details.put("version", Build.VERSION.RELEASE);
-        int buildVersion = getDeviceRuntimeSdkVersion();
-        details.put("apiLevel", buildVersion);
-        details.put("apiName", getNameForApiLevel(buildVersion));
+        details.put("batteryLevel", batteryLevel);
+        details.put("isCharging", isCharging);
+        details.put("chargePlug", chargePlug);
+        details.put("isPowerSaveMode", isPowerSaveMode);
+        details.put("isDeviceIdleMode", isDeviceIdleMode);
+        details.put("thermalStatus", thermalStatus);
+        if(!Float.isNaN(thermalHeadroom)){
+            details.put("thermalHeadroom", (double) thermalHeadroom);
+        }
         return details;
     }
 
-    protected int getDeviceRuntimeSdkVersion() {
-        return Build.VERSION.SDK_INT;
-    }
+    /**
+     * Registers the receivers and listeners that keep the power state up to date, if not registered already.
+     */
+    protected synchronized void startPowerStateTracking(){
+        if(powerStateReceiver != null){
+            return;
+        }
 
-    public JSONObject getBuildOSVersion() throws Exception{
-        JSONObject details = new JSONObject();
-        int targetVersion = getBuildTargetSdkVersion();
-        int minVersion = getBuildMinimumSdkVersion();
+        powerManager = (PowerManager) applicationContext.getSystemService(Context.POWER_SERVICE);
+        isPowerSaveMode = powerManager.isPowerSaveMode();
+        if(Build.VERSION.SDK_INT >= 23){ // Android 6
+            isDeviceIdleMode = powerManager.isDeviceIdleMode();
+        }
 
-        details.put("targetApiLevel", targetVersion);
-        details.put("targetApiName", getNameForApiLevel(targetVersion));
-        details.put("minApiLevel", minVersion);
-        details.put("minApiName", getNameForApiLevel(minVersion));
-        return details;
-    }
+        powerStateReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                if(updatePowerState(intent)){
+                    notifyPowerStateListener();
+                }
+            }
+        };
 
-    protected int getBuildTargetSdkVersion() throws Exception{
-        int targetVersion = 0;
-        Activity activity = instance.cordova.getActivity();
-        ApplicationInfo applicationInfo = activity.getPackageManager().getApplicationInfo(activity.getPackageName(), 0);
-        if (applicationInfo != null) {
-            targetVersion = applicationInfo.targetSdkVersion;
+        IntentFilter filter = new IntentFilter(Intent.ACTION_BATTERY_CHANGED);
+        filter.addAction(PowerManager.ACTION_POWER_SAVE_MODE_CHANGED);
+        if(Build.VERSION.SDK_INT >= 23){ // Android 6
+            filter.addAction(PowerManager.ACTION_DEVICE_IDLE_MODE_CHANGED);
+        }
+        Intent batteryStatus = applicationContext.registerReceiver(powerStateReceiver, filter);
+        if(batteryStatus != null){
+            updatePowerState(batteryStatus);
+        }
+
+        if(Build.VERSION.SDK_INT >= 29){ // Android 10
+            thermalStatus = powerManager.getCurrentThermalStatus();
+            PowerManager.OnThermalStatusChangedListener listener = new PowerManager.OnThermalStatusChangedListener() {
+                @Override
+                public void onThermalStatusChanged(int status) {
+                    synchronized (Diagnostic.this) {
+                        thermalStatus = status;
+                        thermalHeadroomTime = 0;
+                    }
+                    FlightRecorder.recordState("thermalStatus", status);
+                    notifyPowerStateListener();
+                }
+            };
+            powerManager.addThermalStatusListener(listener);
+            thermalStatusListener = listener;
         }
-        return targetVersion;
     }
 
-    protected int getBuildMinimumSdkVersion() throws Exception{
-        int minVersion = 0;
-        Activity activity = instance.cordova.getActivity();
-        ApplicationInfo applicationInfo = activity.getPackageManager().getApplicationInfo(activity.getPackageName(), 0);
-        if (applicationInfo != null) {
-            if(Build.VERSION.SDK_INT >= 24){
-                minVersion = applicationInfo.minSdkVersion;
-            }
+    /**
+     * Unregisters the power state receivers and listeners.
+     */
+    protected synchronized void stopPowerStateTracking(){
+        if(powerStateReceiver == null){
+            return;
+        }
+
+        applicationContext.unregisterReceiver(powerStateReceiver);
+        powerStateReceiver = null;
+        if(Build.VERSION.SDK_INT >= 29 && thermalStatusListener != null){ // Android 10
+            powerManager.removeThermalStatusListener((PowerManager.OnThermalStatusChangedListener) thermalStatusListener);
+            thermalStatusListener = null;
         }
-        return minVersion;
     }
 
+    /**
+     * Updates the cached power state with a received broadcast.
+     * @param intent Received broadcast.
+     * @return Whether the power state changed.
+     */
+    protected synchronized boolean updatePowerState(Intent intent){
+        String action = intent.getAction();
+        if(PowerManager.ACTION_POWER_SAVE_MODE_CHANGED.equals(action)){
+            boolean previous = isPowerSaveMode;
+            isPowerSaveMode = powerManager.isPowerSaveMode();
+            FlightRecorder.recordState("powerSaveMode", isPowerSaveMode ? 1 : 0);
+            return previous != isPowerSaveMode;
+        }
+        if(Build.VERSION.SDK_INT >= 23 && PowerManager.ACTION_DEVICE_IDLE_MODE_CHANGED.equals(action)){ // Android 6
+            boolean previous = isDeviceIdleMode;
+            isDeviceIdleMode = powerManager.isDeviceIdleMode();
+            FlightRecorder.recordState("deviceIdleMode", isDeviceIdleMode ? 1 : 0);
+            return previous != isDeviceIdleMode;
+        }
 
-    // https://stackoverflow.com/a/55946200/777265
-    protected String getNameForApiLevel(int apiLevel) throws Exception{
-        Field[] fields = Build.VERSION_CODES.class.getFields();
-        String codeName = "UNKNOWN";
-        for (Field field : fields) {
-            if (field.getInt(Build.VERSION_CODES.class) == apiLevel) {
-                codeName = field.getName();
-            }
+        // Battery changed. It's sent very often (e.g. on temperature changes), only report relevant changes.
+        int level = intent.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+        int scale = intent.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+        int newBatteryLevel = level >= 0 && scale > 0 ? Math.round(level * 100f / scale) : -1;
+        int status = intent.getIntExtra(BatteryManager.EXTRA_STATUS, -1);
+        boolean newIsCharging = status == BatteryManager.BATTERY_STATUS_CHARGING || status == BatteryManager.BATTERY_STATUS_FULL;
+        String newChargePlug;
+        switch (intent.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0)) {
+            case BatteryManager.BATTERY_PLUGGED_AC:
+                newChargePlug = "ac";
+                break;
+            case BatteryManager.BATTERY_PLUGGED_USB:
+                newChargePlug = "usb";
+                break;
+            case BatteryManager.BATTERY_PLUGGED_WIRELESS:
+                newChargePlug = "wireless";
+                break;
+            default:
+                newChargePlug = "none";
         }
-        return codeName;
+
+        boolean changed = newBatteryLevel != batteryLevel || newIsCharging != isCharging || !newChargePlug.equals(chargePlug);
+        if(newIsCharging != isCharging){
+            FlightRecorder.recordState("charging", newIsCharging ? 1 : 0);
+        }
+        if(newBatteryLevel != batteryLevel){
+            FlightRecorder.recordState("batteryLevel", newBatteryLevel);
+        }
+        batteryLevel = newBatteryLevel;
+        isCharging = newIsCharging;
+        chargePlug = newChargePlug;
+        return changed;
     }
 
-    protected String[] concatStrings(String[] A, String[] B) {
-        int aLen = A.length;
-        int bLen = B.length;
-        String[] C= new String[aLen+bLen];
-        System.arraycopy(A, 0, C, 0, aLen);
-        System.arraycopy(B, 0, C, aLen, bLen);
-        return C;
+    protected void notifyPowerStateListener(){
+        try {
+            notifyStateListener(STATE_POWER, getPowerState());
+        } catch (Exception e) {
+            logError("Unable to notify power state change: " + e.getMessage());
+        }
     }
 
-    /************
-     * Overrides
-     ***********/
+    /**
+     * Get the state of the default network: transport, metered, roaming, validated and link bandwidth estimates.
+     * Values come from a network callback registered on first use, so this is cheap to call.
+     */
+    public synchronized JSONObject getNetworkState() throws Exception{
+        startNetworkTracking();
+
+        JSONObject details = new JSONObject();
+        details.put("isConnected", isNetworkConnected);
+        details.put("transport", networkTransport);
+        details.put("isMetered", isNetworkMetered);
+        details.put("isRoaming", isNetworkRoaming);
+        details.put("isValidated", isNetworkValidated);
+        details.put("linkDownstreamBandwidthKbps", linkDownstreamBandwidthKbps);
+        details.put("linkUpstreamBandwidthKbps", linkUpstreamBandwidthKbps);
+        return details;
+    }
 
     /**
-     * Callback received when a runtime permissions request has been completed.
-     * Retrieves the stateful Cordova context and permission statuses associated with the requestId,
-     * then updates the list of status based on the grantResults before passing the result back via the context.
-     *
-     * @param requestCode - ID that was used when requesting permissions
-     * @param permissions - list of permissions that were requested
-     * @param grantResults - list of flags indicating if above permissions were granted or denied
+     * Registers the default network callback, if not registered already.
      */
-    public void onRequestPermissionResult(int requestCode, String[] permissions, int[] grantResults) throws JSONException {
-        String sRequestId = String.valueOf(requestCode);
-        Log.v(TAG, "Received result for permissions request id=" + sRequestId);
-        try {
+    protected synchronized void startNetworkTracking(){
+        if(networkCallback != null){
+            return;
+        }
 
-            CallbackContext context = getContextById(sRequestId);
-            JSONObject statuses = permissionStatuses.get(sRequestId);
+        connectivityManager = (ConnectivityManager) applicationContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+        networkCallback = new ConnectivityManager.NetworkCallback() {
+            @Override
+            public void onCapabilitiesChanged(Network network, NetworkCapabilities capabilities) {
+                if(updateNetworkState(capabilities)){
+                    notifyNetworkStateListener();
+                }
+            }
 
-            for (int i = 0, len = permissions.length; i < len; i++) {
-                String androidPermission = permissions[i];
-                String permission = permissionsMap.get(androidPermission);
-                if(Build.VERSION.SDK_INT < 29 && permission.equals("ACCESS_BACKGROUND_LOCATION")){
+            @Override
+            public void onLost(Network network) {
+                if(updateNetworkState(null)){
+                    notifyNetworkStateListener();
+                }
+            }
+        };
+
+        NetworkCapabilities capabilities = connectivityManager.getNetworkCapabilities(connectivityManager.getActiveNetwork());
+        updateNetworkState(capabilities);
+        connectivityManager.registerDefaultNetworkCallback(networkCallback);
+    }
+
+    /**
+     * Unregisters the default network callback.
+     */
+    protected synchronized void stopNetworkTracking(){
+        if(networkCallback == null){
+            return;
+        }
+
+        try {
+            connectivityManager.unregisterNetworkCallback(networkCallback);
+        } catch (Exception e) {
+            logDebug(e.getMessage());
+        }
+        networkCallback = null;
+    }
+
+    /**
+     * Updates the cached network state with the capabilities of the default network.
+     * @param capabilities Capabilities of the default network, null if there's no network.
+     * @return Whether the network state changed. Small changes in bandwidth estimates are not considered changes.
+     */
+    protected synchronized boolean updateNetworkState(NetworkCapabilities capabilities){
+        boolean newIsConnected = capabilities != null;
+        String newTransport = "none";
+        boolean newIsMetered = false;
+        boolean newIsRoaming = false;
+        boolean newIsValidated = false;
+        int newDownstream = 0;
+        int newUpstream = 0;
+
+        if(capabilities != null){
+            if(capabilities.hasTransport(NetworkCapabilities.TRANSPORT_VPN)){
+                newTransport = "vpn";
+            }else if(capabilities.hasTransport(NetworkCapabilities.TRANSPORT_WIFI)){
+                newTransport = "wifi";
+            }else if(capabilities.hasTransport(NetworkCapabilities.TRANSPORT_CELLULAR)){
+                newTransport = "cellular";
+            }else if(capabilities.hasTransport(NetworkCapabilities.TRANSPORT_ETHERNET)){
+                newTransport = "ethernet";
+            }else if(capabilities.hasTransport(NetworkCapabilities.TRANSPORT_BLUETOOTH)){
+                newTransport = "bluetooth";
+            }else{
+                newTransport = "other";
+            }
+            newIsMetered = !capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_NOT_METERED);
+            if(Build.VERSION.SDK_INT >= 28){ // Android 9
+                newIsRoaming = !capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_NOT_ROAMING);
+            }
+            newIsValidated = capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED);
+            newDownstream = capabilities.getLinkDownstreamBandwidthKbps();
+            newUpstream = capabilities.getLinkUpstreamBandwidthKbps();
+        }
+
+        boolean changed = newIsConnected != isNetworkConnected || !newTransport.equals(networkTransport)
+                || newIsMetered != isNetworkMetered || newIsRoaming != isNetworkRoaming || newIsValidated != isNetworkValidated
+                || isBandwidthChange(linkDownstreamBandwidthKbps, newDownstream) || isBandwidthChange(linkUpstreamBandwidthKbps, newUpstream);
+
+        if(newIsConnected != isNetworkConnected || !newTransport.equals(networkTransport) || newIsValidated != isNetworkValidated){
+            FlightRecorder.recordState(STATE_NETWORK, newTransport, newIsValidated ? 1 : 0);
+        }
+
+        isNetworkConnected = newIsConnected;
+        networkTransport = newTransport;
+        isNetworkMetered = newIsMetered;
+        isNetworkRoaming = newIsRoaming;
+        isNetworkValidated = newIsValidated;
+        linkDownstreamBandwidthKbps = newDownstream;
+        linkUpstreamBandwidthKbps = newUpstream;
+        return changed;
+    }
+
+    /**
+     * Bandwidth estimates change constantly, only changes bigger than 25% are reported.
+     */
+    protected boolean isBandwidthChange(int previous, int current){
+        return Math.abs(current - previous) * 4 > Math.max(previous, 1);
+    }
+
+    protected void notifyNetworkStateListener(){
+        try {
+            notifyStateListener(STATE_NETWORK, getNetworkState());
+        } catch (Exception e) {
+            logError("Unable to notify network state change: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Get what limits the background work of the app: standby bucket, background restriction, battery optimization,
+     * data saver and doze state.
+     */
+    public JSONObject getBackgroundState() throws Exception{
+        PowerManager pm = (PowerManager) applicationContext.getSystemService(Context.POWER_SERVICE);
+        ConnectivityManager cm = (ConnectivityManager) applicationContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+
+        String standbyBucket = "unknown";
+        boolean isBackgroundRestricted = false;
+        if(Build.VERSION.SDK_INT >= 28){ // Android 9
+            UsageStatsManager usageStatsManager = (UsageStatsManager) applicationContext.getSystemService(Context.USAGE_STATS_SERVICE);
+            standbyBucket = getStandbyBucketName(usageStatsManager.getAppStandbyBucket());
+            ActivityManager activityManager = (ActivityManager) applicationContext.getSystemService(Context.ACTIVITY_SERVICE);
+            isBackgroundRestricted = activityManager.isBackgroundRestricted();
+        }
+
+        String dataSaver;
+        switch (cm.getRestrictBackgroundStatus()) {
+            case ConnectivityManager.RESTRICT_BACKGROUND_STATUS_ENABLED:
+                dataSaver = "enabled";
+                break;
+            case ConnectivityManager.RESTRICT_BACKGROUND_STATUS_WHITELISTED:
+                dataSaver = "allowlisted";
+                break;
+            default:
+                dataSaver = "disabled";
+        }
+
+        JSONObject details = new JSONObject();
+        details.put("standbyBucket", standbyBucket);
+        details.put("isBackgroundRestricted", isBackgroundRestricted);
+        details.put("isIgnoringBatteryOptimizations", pm.isIgnoringBatteryOptimizations(applicationContext.getPackageName()));
+        details.put("dataSaver", dataSaver);
+        details.put("isDeviceIdleMode", pm.isDeviceIdleMode());
+        details.put("isDeviceLightIdleMode", Build.VERSION.SDK_INT >= 33 && pm.isDeviceLightIdleMode()); // Android 13
+        return details;
+    }
+
+    protected String getStandbyBucketName(int bucket){
+        switch (bucket) {
+            case UsageStatsManager.STANDBY_BUCKET_ACTIVE:
+                return "active";
+            case UsageStatsManager.STANDBY_BUCKET_WORKING_SET:
+                return "workingSet";
+            case UsageStatsManager.STANDBY_BUCKET_FREQUENT:
+                return "frequent";
+            case UsageStatsManager.STANDBY_BUCKET_RARE:
+                return "rare";
+            case UsageStatsManager.STANDBY_BUCKET_RESTRICTED:
+                return "restricted";
+            default:
+                return "unknown";
+        }
+    }
+
+    /**
+     * Registers the receiver of the data saver and doze broadcasts, if not registered already.
+     */
+    protected synchronized void startBackgroundStateTracking(){
+        if(backgroundStateReceiver != null){
+            return;
+        }
+
+        backgroundStateReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                notifyBackgroundStateListener();
+            }
+        };
+
+        IntentFilter filter = new IntentFilter(ConnectivityManager.ACTION_RESTRICT_BACKGROUND_CHANGED);
+        filter.addAction(PowerManager.ACTION_DEVICE_IDLE_MODE_CHANGED);
+        if(Build.VERSION.SDK_INT >= 33){ // Android 13
+            filter.addAction(PowerManager.ACTION_DEVICE_LIGHT_IDLE_MODE_CHANGED);
+        }
+        applicationContext.registerReceiver(backgroundStateReceiver, filter);
+    }
+
+    /**
+     * Unregisters the background state receiver.
+     */
+    protected synchronized void stopBackgroundStateTracking(){
+        if(backgroundStateReceiver == null){
+            return;
+        }
+
+        applicationContext.unregisterReceiver(backgroundStateReceiver);
+        backgroundStateReceiver = null;
+        lastBackgroundState = null;
+    }
+
+    /**
+     * Sends the background state to its listener, only if it changed since it was last sent.
+     */
+    protected void notifyBackgroundStateListener(){
+        try {
+            JSONObject state = getBackgroundState();
+            String serialized = state.toString();
+            synchronized (this) {
+                if(serialized.equals(lastBackgroundState)){
+                    return;
+                }
+                lastBackgroundState = serialized;
+            }
+
+            FlightRecorder.recordState("backgroundState", state.getString("standbyBucket"),
+                    state.getBoolean("isBackgroundRestricted") ? 1 : 0);
+            notifyStateListener(STATE_BACKGROUND, state);
+        } catch (Exception e) {
+            logError("Unable to notify background state change: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Get the traffic counters of the app UID since the device booted.
+     * Counters that aren't supported by the device are -1.
+     * @return Time, received bytes, transmitted bytes, received packets and transmitted packets.
+     */
+    protected long[] getTrafficCounters(){
+        int uid = android.os.Process.myUid();
+        return new long[]{
+                SystemClock.elapsedRealtime(),
+                TrafficStats.getUidRxBytes(uid),
+                TrafficStats.getUidTxBytes(uid),
+                TrafficStats.getUidRxPackets(uid),
+                TrafficStats.getUidTxPackets(uid)
+        };
+    }
+
+    protected JSONObject trafficCountersToJSON(long[] counters) throws Exception{
+        JSONObject details = new JSONObject();
+        details.put("time", counters[0]);
+        details.put("rxBytes", counters[1]);
+        details.put("txBytes", counters[2]);
+        details.put("rxPackets", counters[3]);
+        details.put("txPackets", counters[4]);
+        return details;
+    }
+
+    /**
+     * Opens a named traffic checkpoint, replacing any open checkpoint with the same name.
+     * @param name Checkpoint name.
+     * @return Traffic counters when the checkpoint was opened.
+     */
+    public JSONObject startTrafficCheckpoint(String name) throws Exception{
+        if(!trafficCheckpoints.containsKey(name) && trafficCheckpoints.size() >= MAX_TRAFFIC_CHECKPOINTS){
+            throw new Exception("Too many open traffic checkpoints, close some of them first");
+        }
+
+        long[] counters = getTrafficCounters();
+        trafficCheckpoints.put(name, counters);
+        return trafficCountersToJSON(counters);
+    }
+
+    /**
+     * Closes a named traffic checkpoint.
+     * The traffic is counted for the whole app, so it includes any other transfer done while the checkpoint was open.
+     * @param name Checkpoint name.
+     * @return Traffic since the checkpoint was opened. The time is the duration of the checkpoint.
+     */
+    public JSONObject stopTrafficCheckpoint(String name) throws Exception{
+        long[] start = trafficCheckpoints.remove(name);
+        if(start == null){
+            throw new Exception("Traffic checkpoint '"+name+"' is not open");
+        }
+
+        long[] counters = getTrafficCounters();
+        for(int i = 0; i < counters.length; i++){
+            counters[i] = counters[i] < 0 || start[i] < 0 ? -1 : counters[i] - start[i];
+        }
+        FlightRecorder.recordState("traffic", name, counters[1] + counters[2]);
+        return trafficCountersToJSON(counters);
+    }
+
+    /**
+     * Tags the network traffic of the current thread, so native transfers can be told apart in the system
+     * network statistics (e.g. "adb shell dumpsys netstats detail").
+     * @param operation Name of the operation, it's hashed to get the tag.
+     * @return Previous tag of the thread, to restore it with restoreThreadTrafficTag.
+     */
+    public static int tagThreadTraffic(String operation){
+        int previous = TrafficStats.getThreadStatsTag();
+        // Tags 0xFFFFFF00-0xFFFFFFFF are reserved by the system and 0 means untagged, so the sign bit is cleared.
+        int tag = operation.hashCode() & 0x7FFFFFFF;
+        TrafficStats.setThreadStatsTag(tag != 0 ? tag : 1);
+        return previous;
+    }
+
+    public static void restoreThreadTrafficTag(int tag){
+        TrafficStats.setThreadStatsTag(tag);
+    }
+
+    /**
+     * Starts sampling the resources used by the process, or changes the interval if already started.
+     * @param interval Time between samples, in milliseconds.
+     */
+    public void startResourceSampler(long interval){
+        getResourceSampler().start(interval);
+    }
+
+    public void stopResourceSampler(){
+        ResourceSampler sampler = resourceSampler;
+        if(sampler != null){
+            sampler.stop();
+        }
+    }
+
+    /**
+     * Get the samples taken by the resource sampler, oldest first.
+     * @param clear Whether to discard the samples once returned.
+     */
+    public JSONObject getResourceSeries(boolean clear) throws Exception{
+        return getResourceSampler().toJSON(clear);
+    }
+
+    /**
+     * Get the resource sampler, creating it if needed.
+     */
+    protected ResourceSampler getResourceSampler(){
+        ResourceSampler sampler = resourceSampler;
+        if(sampler == null){
+            synchronized (resourceSamplerLock) {
+                sampler = resourceSampler;
+                if(sampler == null){
+                    sampler = new ResourceSampler(RESOURCE_SAMPLER_CAPACITY);
+                    resourceSampler = sampler;
+                }
+            }
+        }
+        return sampler;
+    }
+
+    /**
+     * Starts sending the changes of a state to a callback context. The current state is sent straight away.
+     * @param name State name.
+     * @param callbackContext Callback context that will receive the changes.
+     */
+    public void watchState(String name, CallbackContext callbackContext) throws Exception{
+        JSONObject state;
+        if(STATE_POWER.equals(name)){
+            state = getPowerState();
+        }else if(STATE_NETWORK.equals(name)){
+            state = getNetworkState();
+        }else if(STATE_BACKGROUND.equals(name)){
+            startBackgroundStateTracking();
+            state = getBackgroundState();
+            synchronized (this) {
+                lastBackgroundState = state.toString();
+            }
+        }else{
+            throw new Exception("State name '"+name+"' is not a valid state");
+        }
+
+        synchronized (stateListeners) {
+            stateListeners.put(name, callbackContext);
+        }
+        notifyStateListener(name, state);
+    }
+
+    /**
+     * Stops sending the changes of a state.
+     * @param name State name.
+     */
+    public void unwatchState(String name){
+        synchronized (stateListeners) {
+            stateListeners.remove(name);
+        }
+        if(STATE_POWER.equals(name)){
+            stopPowerStateTracking();
+        }else if(STATE_NETWORK.equals(name)){
+            stopNetworkTracking();
+        }else if(STATE_BACKGROUND.equals(name)){
+            stopBackgroundStateTracking();
+        }
+    }
+
+    /**
+     * Sends a state to the callback context listening to its changes, if any.
+     * @param name State name.
+     * @param state Current state.
+     */
+    protected void notifyStateListener(String name, JSONObject state){
+        CallbackContext context;
+        synchronized (stateListeners) {
+            context = stateListeners.get(name);
+        }
+        if(context == null){
+            return;
+        }
+
+        PluginResult result = new PluginResult(PluginResult.Status.OK, state);
+        result.setKeepCallback(true);
+        context.sendPluginResult(result);
+    }
+
+    /**
+     * Get the storage capacity of the device and the space used by the app directories.
+     * Runs in the background: directory sizes are calculated with a parallel walk that reuses the sizes of the directories
+     * that haven't changed since the previous walk. Concurrent calls wait for the walk in progress to finish.
+     * @param refresh Whether to discard the cached directory sizes. Files modified in place don't change the modification
+     *                time of their directory, so they're only detected by a refresh.
+     * @param callbackContext Callback context.
+     */
+    public void getStorageProfile(final boolean refresh, final CallbackContext callbackContext){
+        cordova.getThreadPool().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    File filesDir = applicationContext.getFilesDir();
+                    File externalFilesDir = Environment.MEDIA_MOUNTED.equals(Environment.getExternalStorageState())
+                            ? applicationContext.getExternalFilesDir(null) : null;
+
+                    JSONObject details = new JSONObject();
+                    details.put("internal", getStorageCapacity(filesDir));
+                    if(externalFilesDir != null){
+                        details.put("external", getStorageCapacity(externalFilesDir));
+                    }
+
+                    if(Build.VERSION.SDK_INT >= 26){ // Android 8
+                        try {
+                            StorageManager sm = (StorageManager) applicationContext.getSystemService(Context.STORAGE_SERVICE);
+                            details.put("allocatableBytes", sm.getAllocatableBytes(sm.getUuidForPath(filesDir)));
+                        } catch (Exception e) {
+                            logDebug("Unable to get allocatable bytes: " + e.getMessage());
+                        }
+                    }
+
+                    JSONObject usage = new JSONObject();
+                    // Walks share the cache, so a refresh or the pruning of a walk can't run while another walk uses it.
+                    synchronized (directoryUsageLock) {
+                        if(refresh){
+                            directoryUsageCache.clear();
+                        }
+
+                        Set<String> visited = ConcurrentHashMap.newKeySet();
+                        usage.put("files", getDirectoryUsage(filesDir, visited));
+                        usage.put("cache", getDirectoryUsage(applicationContext.getCacheDir(), visited));
+                        if(externalFilesDir != null){
+                            usage.put("externalFiles", getDirectoryUsage(externalFilesDir, visited));
+                            usage.put("externalCache", getDirectoryUsage(applicationContext.getExternalCacheDir(), visited));
+                        }
+
+                        // Every cached directory still present has been visited, the rest have been deleted.
+                        directoryUsageCache.keySet().retainAll(visited);
+                    }
+                    details.put("usage", usage);
+
+                    callbackContext.success(details);
+                } catch (Exception e) {
+                    handleError("Unable to get storage profile: " + e.getMessage(), callbackContext);
+                }
+            }
+        });
+    }
+
+    /**
+     * Runs the self benchmark in the background, or returns its cached scores for the current app version.
+     * @param force Whether to run the benchmark even if there are cached scores.
+     * @param timeBudget Maximum time to spend running the benchmark, in milliseconds.
+     * @param callbackContext Callback context.
+     */
+    public void runSelfBenchmark(final boolean force, final long timeBudget, final CallbackContext callbackContext){
+        cordova.getThreadPool().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    callbackContext.success(SelfBenchmark.run(applicationContext, timeBudget, force));
+                } catch (Exception e) {
+                    handleError("Unable to run self benchmark: " + e.getMessage(), callbackContext);
+                }
+            }
+        });
+    }
+
+    /**
+     * Get the flight recorder log of the previous session. It runs in the thread pool because it may need to wait for
+     * the log file to be mapped.
+     *
+     * @param callbackContext Callback context.
+     */
+    public void getPreviousSessionLog(final CallbackContext callbackContext){
+        cordova.getThreadPool().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    JSONObject session = FlightRecorder.getPreviousSession(FLIGHT_RECORDER_MAP_TIMEOUT);
+                    // PluginResult doesn't accept a null JSONObject.
+                    callbackContext.sendPluginResult(session != null
+                            ? new PluginResult(PluginResult.Status.OK, session)
+                            : new PluginResult(PluginResult.Status.OK, (String) null));
+                } catch (Exception e) {
+                    handleError("Unable to get previous session log: " + e.getMessage(), callbackContext);
+                }
+            }
+        });
+    }
+
+    protected JSONObject getStorageCapacity(File path) throws Exception{
+        StatFs stat = new StatFs(path.getPath());
+        JSONObject details = new JSONObject();
+        details.put("freeBytes", stat.getAvailableBytes());
+        details.put("totalBytes", stat.getTotalBytes());
+        return details;
+    }
+
+    protected JSONObject getDirectoryUsage(File directory, Set<String> visited) throws Exception{
+        JSONObject details = new JSONObject();
+        long[] usage = new long[2];
+        if(directory != null && directory.isDirectory()){
+            usage = getDirectorySizePool().invoke(new DirectorySizeTask(directory, directoryUsageCache, visited));
+        }
+        details.put("bytes", usage[0]);
+        details.put("files", usage[1]);
+        return details;
+    }
+
+    protected synchronized ForkJoinPool getDirectorySizePool(){
+        if(directorySizePool == null){
+            directorySizePool = new ForkJoinPool(Math.min(4, Runtime.getRuntime().availableProcessors()));
+        }
+        return directorySizePool;
+    }
+
+    protected synchronized void shutdownDirectorySizePool(){
+        if(directorySizePool != null){
+            directorySizePool.shutdownNow();
+            directorySizePool = null;
+        }
+    }
+
+    /**
+     * Size of the files directly inside a directory, and its subdirectories.
+     */
+    protected static class DirectoryUsage {
+        final long lastModified;
+        final long bytes;
+        final long files;
+        final File[] subdirectories;
+
+        DirectoryUsage(long lastModified, long bytes, long files, File[] subdirectories) {
+            this.lastModified = lastModified;
+            this.bytes = bytes;
+            this.files = files;
+            this.subdirectories = subdirectories;
+        }
+    }
+
+    /**
+     * Calculates the total size and number of files of a directory, walking its subdirectories in parallel.
+     * The result is an array with the size in bytes and the number of files.
+     * Symbolic links are skipped, they don't use space and they could create loops.
+     */
+    protected static class DirectorySizeTask extends RecursiveTask<long[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final File directory;
+        private final ConcurrentHashMap<String, DirectoryUsage> cache;
+        private final Set<String> visited;
+
+        DirectorySizeTask(File directory, ConcurrentHashMap<String, DirectoryUsage> cache, Set<String> visited) {
+            this.directory = directory;
+            this.cache = cache;
+            this.visited = visited;
+        }
+
+        @Override
+        protected long[] compute() {
+            String path = directory.getAbsolutePath();
+            if(!visited.add(path)){
+                return new long[2];
+            }
+
+            long lastModified = directory.lastModified();
+            DirectoryUsage usage = cache.get(path);
+
+            if(usage == null || usage.lastModified != lastModified){
+                File[] children = directory.listFiles();
+                List<File> subdirectories = new ArrayList<File>();
+                long bytes = 0;
+                long files = 0;
+                if(children != null){
+                    for(File child : children){
+                        StructStat stat;
+                        try {
+                            // A single lstat tells the type and size without following symbolic links.
+                            stat = Os.lstat(child.getPath());
+                        } catch (ErrnoException e) {
+                            continue; // Deleted while walking.
+                        }
+
+                        if(OsConstants.S_ISLNK(stat.st_mode)){
+                            continue;
+                        }else if(OsConstants.S_ISDIR(stat.st_mode)){
+                            subdirectories.add(child);
+                        }else{
+                            bytes += stat.st_size;
+                            files++;
+                        }
+                    }
+                }
+                usage = new DirectoryUsage(lastModified, bytes, files, subdirectories.toArray(new File[0]));
+                cache.put(path, usage);
+            }
+
+            long[] total = new long[] { usage.bytes, usage.files };
+            List<DirectorySizeTask> tasks = new ArrayList<DirectorySizeTask>();
+            for(File subdirectory : usage.subdirectories){
+                DirectorySizeTask task = new DirectorySizeTask(subdirectory, cache, visited);
+                task.fork();
+                tasks.add(task);
+            }
+            for(DirectorySizeTask task : tasks){
+                long[] subtotal = task.join();
+                total[0] += subtotal[0];
+                total[1] += subtotal[1];
+            }
+            return total;
+        }
+    }
+
+    /**
+     * Parses a kernel CPU list, e.g. "0-3,6".
+     * @param cpuList Raw list. If null, the cores available to the VM are used.
+     * @return List of CPU indexes.
+     */
+    protected List<Integer> parseCpuList(String cpuList){
+        List<Integer> cores = new ArrayList<Integer>();
+        try {
+            if(cpuList != null && !cpuList.isEmpty()){
+                for(String range : cpuList.split(",")){
+                    String[] bounds = range.split("-");
+                    int first = Integer.parseInt(bounds[0].trim());
+                    int last = bounds.length > 1 ? Integer.parseInt(bounds[1].trim()) : first;
+                    for(int core = first; core <= last; core++){
+                        cores.add(core);
+                    }
+                }
+                return cores;
+            }
+        } catch (NumberFormatException e) {
+            logDebug("Invalid CPU list: " + cpuList);
+            cores.clear();
+        }
+
+        for(int core = 0; core < Runtime.getRuntime().availableProcessors(); core++){
+            cores.add(core);
+        }
+        return cores;
+    }
+
+    /**
+     * Reads the first line of a sysfs or procfs file.
+     * @param path File path.
+     * @return Trimmed first line, null if it can't be read.
+     */
+    protected String readSysFile(String path){
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new FileReader(path));
+            String line = reader.readLine();
+            return line != null ? line.trim() : null;
+        } catch (Exception e) {
+            return null;
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (Exception e) {
+                    // Ignore errors.
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the plugin preferences, loading them if needed.
+     */
+    protected SharedPreferences getSharedPref(){
+        if(sharedPref == null){
+            synchronized (permissionsLock) {
+                if(sharedPref == null){
+                    SharedPreferences preferences = applicationContext.getSharedPreferences(TAG, Activity.MODE_PRIVATE);
+                    editor = preferences.edit();
+                    sharedPref = preferences;
+                }
+            }
+        }
+        return sharedPref;
+    }
+
+    /**
+     * Flags some permissions as requested. The flags are persisted in a single asynchronous write.
+     * @param androidPermissions Android names of the permissions.
+     */
+    protected void setPermissionsRequested(String[] androidPermissions){
+        Set<String> requested = getRequestedPermissions();
+        synchronized (requested) {
+            for(String androidPermission : androidPermissions){
+                String permission = permissionsMap.get(androidPermission);
+                requested.add(permission);
+                editor.putBoolean(permission, true);
+            }
+            editor.apply();
+        }
+        clearPermissionStatusCache();
+    }
+
+    /**
+     * Clear the permission status cache. The generation is incremented first, so a status being computed at the same
+     * time is either cleared or discarded when it's stored.
+     */
+    protected void clearPermissionStatusCache(){
+        permissionStatusGeneration.incrementAndGet();
+        permissionStatusCache.clear();
+    }
+
+    protected boolean isPermissionRequested(String permission){
+        Set<String> requested = getRequestedPermissions();
+        synchronized (requested) {
+            return requested.contains(permission);
+        }
+    }
+
+    /**
+     * Get the permissions that have been requested at least once, loading them from preferences if needed.
+     */
+    protected Set<String> getRequestedPermissions(){
+        if(requestedPermissions == null){
+            synchronized (permissionsLock) {
+                if(requestedPermissions == null){
+                    Set<String> requested = new HashSet<String>();
+                    for(Map.Entry<String, ?> entry : getSharedPref().getAll().entrySet()){
+                        if(Boolean.TRUE.equals(entry.getValue())){
+                            requested.add(entry.getKey());
+                        }
+                    }
+                    requestedPermissions = requested;
+                }
+            }
+        }
+        return requestedPermissions;
+    }
+
+    protected int getCurrentBatteryLevel(){
+        if(powerStateReceiver != null && batteryLevel >= 0){
+            return batteryLevel;
+        }
+        BatteryManager bm = (BatteryManager) cordova.getContext().getApplicationContext().getSystemService(BATTERY_SERVICE);
+        return bm.getIntProperty(BatteryManager.BATTERY_PROPERTY_CAPACITY);
+    }
+
+    protected boolean hasBuildPermission(String permission)
+    {
+        String androidPermission = permissionsMap.get(permission);
+        return getManifestPermissions().contains(androidPermission != null ? androidPermission : permission);
+    }
+
+    /**
+     * Get the permissions declared in the app manifest, indexing them if needed.
+     */
+    protected Set<String> getManifestPermissions(){
+        if(manifestPermissions == null){
+            synchronized (permissionsLock) {
+                if(manifestPermissions == null){
+                    Set<String> permissions = new HashSet<String>();
+                    try {
+                        PackageInfo info = applicationContext.getPackageManager().getPackageInfo(applicationContext.getPackageName(), PackageManager.GET_PERMISSIONS);
+                        if (info.requestedPermissions != null) {
+                            Collections.addAll(permissions, info.requestedPermissions);
+                        }
+                    } catch (Exception e) {
+                        logError("Unable to read manifest permissions: " + e.getMessage());
+                    }
+                    manifestPermissions = permissions;
+                }
+            }
+        }
+        return manifestPermissions;
+    }
+
+    /**
+     * Get the status of every supported permission, with its requested flag, whether it's declared in the manifest and
+     * the SDK versions where it applies.
+     */
+    public JSONObject getAllPermissionStatuses() throws Exception{
+        List<String> names = new ArrayList<String>();
+        for(String name : permissionsMap.keySet()){
+            if(!name.startsWith("android.permission.")){
+                names.add(name);
+            }
+        }
+
+        JSONObject statuses = _getPermissionsAuthorizationStatus(names.toArray(new String[0]));
+        int runtimeSdkVersion = getDeviceRuntimeSdkVersion();
+        JSONObject details = new JSONObject();
+        for(String name : names){
+            JSONObject permission = new JSONObject();
+            permission.put("status", statuses.getString(name));
+            permission.put("requested", isPermissionRequested(name));
+            permission.put("declared", hasBuildPermission(name));
+            boolean applicable = true;
+            if(minSdkPermissionMap.containsKey(name)){
+                permission.put("minSdk", minSdkPermissionMap.get(name));
+                applicable = runtimeSdkVersion >= minSdkPermissionMap.get(name);
+            }
+            if(maxSdkPermissionMap.containsKey(name)){
+                permission.put("maxSdk", maxSdkPermissionMap.get(name));
+                applicable = applicable && runtimeSdkVersion <= maxSdkPermissionMap.get(name);
+            }
+            permission.put("applicable", applicable);
+            details.put(name, permission);
+        }
+        return details;
+    }
+
+    public boolean isAirplaneModeEnabled() {
+        return Settings.Global.getInt(this.cordova.getActivity().getContentResolver(),
+                Settings.Global.AIRPLANE_MODE_ON, 0) != 0;
+    }
+
+    public JSONObject getDeviceOSVersion() throws Exception{
+        JSONObject details = new JSONObject();
+        details.put("version", Build.VERSION.RELEASE);
+        int buildVersion = getDeviceRuntimeSdkVersion();
+        details.put("apiLevel", buildVersion);
+        details.put("apiName", getNameForApiLevel(buildVersion));
+        return details;
+    }
+
+    /**
+     * Get the memory details of the device and the app process.
+     * Values that can't change during the process lifetime are only computed once, the rest are refreshed on each call.
+     */
+    public synchronized JSONObject getMemoryProfile() throws Exception{
+        if(activityManager == null){
+            activityManager = (ActivityManager) applicationContext.getSystemService(Context.ACTIVITY_SERVICE);
+            memoryInfo = new ActivityManager.MemoryInfo();
+            isLowRamDevice = activityManager.isLowRamDevice();
+            memoryClass = activityManager.getMemoryClass();
+            largeMemoryClass = activityManager.getLargeMemoryClass();
+            if(Build.VERSION.SDK_INT >= 31){ // Android 12
+                mediaPerformanceClass = Build.VERSION.MEDIA_PERFORMANCE_CLASS;
+            }
+        }
+
+        activityManager.getMemoryInfo(memoryInfo);
+
+        JSONObject details = new JSONObject();
+        details.put("availMem", memoryInfo.availMem);
+        details.put("totalMem", memoryInfo.totalMem);
+        details.put("threshold", memoryInfo.threshold);
+        details.put("lowMemory", memoryInfo.lowMemory);
+        details.put("isLowRamDevice", isLowRamDevice);
+        details.put("memoryClass", memoryClass);
+        details.put("largeMemoryClass", largeMemoryClass);
+        details.put("mediaPerformanceClass", mediaPerformanceClass);
+        return details;
+    }
+
+    protected int getDeviceRuntimeSdkVersion() {
+        return Build.VERSION.SDK_INT;
+    }
+
+    public JSONObject getBuildOSVersion() throws Exception{
+        JSONObject details = new JSONObject();
+        int targetVersion = getBuildTargetSdkVersion();
+        int minVersion = getBuildMinimumSdkVersion();
+
+        details.put("targetApiLevel", targetVersion);
+        details.put("targetApiName", getNameForApiLevel(targetVersion));
+        details.put("minApiLevel", minVersion);
+        details.put("minApiName", getNameForApiLevel(minVersion));
+        return details;
+    }
+
+    protected int getBuildTargetSdkVersion() throws Exception{
+        if(buildTargetSdkVersion >= 0){
+            return buildTargetSdkVersion;
+        }
+        int targetVersion = 0;
+        Activity activity = cordova.getActivity();
+        ApplicationInfo applicationInfo = activity.getPackageManager().getApplicationInfo(activity.getPackageName(), 0);
+        if (applicationInfo != null) {
+            targetVersion = applicationInfo.targetSdkVersion;
+        }
+        buildTargetSdkVersion = targetVersion;
+        return targetVersion;
+    }
+
+    protected int getBuildMinimumSdkVersion() throws Exception{
+        int minVersion = 0;
+        Activity activity = cordova.getActivity();
+        ApplicationInfo applicationInfo = activity.getPackageManager().getApplicationInfo(activity.getPackageName(), 0);
+        if (applicationInfo != null) {
+            if(Build.VERSION.SDK_INT >= 24){
+                minVersion = applicationInfo.minSdkVersion;
+            }
+        }
+        return minVersion;
+    }
+
+
+    // https://stackoverflow.com/a/55946200/777265
+    protected String getNameForApiLevel(int apiLevel) throws Exception{
+        Field[] fields = Build.VERSION_CODES.class.getFields();
+        String codeName = "UNKNOWN";
+        for (Field field : fields) {
+            if (field.getInt(Build.VERSION_CODES.class) == apiLevel) {
+                codeName = field.getName();
+            }
+        }
+        return codeName;
+    }
+
+    protected String[] concatStrings(String[] A, String[] B) {
+        int aLen = A.length;
+        int bLen = B.length;
+        String[] C= new String[aLen+bLen];
+        System.arraycopy(A, 0, C, 0, aLen);
+        System.arraycopy(B, 0, C, aLen, bLen);
+        return C;
+    }
+
+    /************
+     * Overrides
+     ***********/
+
+    /**
+     * Called when the activity comes to the foreground. The user may have changed permissions in the settings.
+     * It isn't called before the plugin is created, but then there are no cached statuses or listeners to refresh.
+     */
+    @Override
+    public void onResume(boolean multitasking) {
+        clearPermissionStatusCache();
+
+        // The standby bucket and background restrictions aren't broadcast, the user may have changed them in the settings.
+        if(stateListeners.containsKey(STATE_BACKGROUND)){
+            cordova.getThreadPool().execute(new Runnable() {
+                @Override
+                public void run() {
+                    notifyBackgroundStateListener();
+                }
+            });
+        }
+    }
+
+    /**
+     * Called when the WebView navigates or refreshes. State listeners belong to the previous page, so they're discarded.
+     */
+    @Override
+    public void onReset() {
+        synchronized (stateListeners) {
+            stateListeners.clear();
+        }
+        trafficCheckpoints.clear();
+        stopPowerStateTracking();
+        stopNetworkTracking();
+        stopBackgroundStateTracking();
+    }
+
+    /**
+     * Called when a message is sent to plugins. Used to know when a soft restart has finished.
+     */
+    @Override
+    public Object onMessage(String id, Object data) {
+        if ("onPageFinished".equals(id)) {
+            StartupTimeline.markPageFinished();
+        }
+        return null;
+    }
+
+    /**
+     * Called when the plugin is destroyed. Unregisters any receiver or listener.
+     */
+    @Override
+    public void onDestroy() {
+        onReset();
+        stopResourceSampler();
+        shutdownDirectorySizePool();
+    }
+
+    /**
+     * Callback received when a runtime permissions request has been completed.
+     * Retrieves the stateful Cordova context and permission statuses associated with the requestId,
+     * then updates the list of status based on the grantResults before passing the result back via the context.
+     *
+     * @param requestCode - ID that was used when requesting permissions
+     * @param permissions - list of permissions that were requested
+     * @param grantResults - list of flags indicating if above permissions were granted or denied
+     */
+    public void onRequestPermissionResult(int requestCode, String[] permissions, int[] grantResults) throws JSONException {
+        String sRequestId = String.valueOf(requestCode);
+        Log.v(TAG, "Received result for permissions request id=" + sRequestId);
+        clearPermissionStatusCache();
+        Tracing.endAsyncSection(TAG, "requestRuntimePermissions", requestCode);
+        boolean traced = Tracing.beginSection(TAG, "onRequestPermissionResult");
+        try {
+
+            CallbackContext context = getContextById(sRequestId);
+            JSONObject statuses = permissionStatuses.get(sRequestId);
+
+            for (int i = 0, len = permissions.length; i < len; i++) {
+                String androidPermission = permissions[i];
+                String permission = permissionsMap.get(androidPermission);
+                if(Build.VERSION.SDK_INT < 29 && permission.equals("ACCESS_BACKGROUND_LOCATION")){
                     // This version of Android doesn't support background location permission so use standard coarse location permission
                     permission = "ACCESS_COARSE_LOCATION";
                 }
@@ -1067,6 +2494,10 @@ public class Diagnostic extends CordovaPlugin{
             }
         }catch(Exception e ) {
             handleError("Exception occurred onRequestPermissionsResult: ".concat(e.getMessage()), requestCode);
+        } finally {
+            if (traced) {
+                Tracing.endSection();
+            }
         }
     }
 
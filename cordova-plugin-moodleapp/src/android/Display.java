@@ -0,0 +1,534 @@
+// (C) Copyright 2015 Moodle Pty Ltd.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.moodle.moodlemobile;
+
+import android.app.Activity;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.FrameMetrics;
+import android.view.Window;
+import android.view.WindowManager;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.CordovaPlugin;
+
+public class Display extends CordovaPlugin {
+
+    private static final String TAG = "Display";
+    private static final String REFRESH_RATE_HIGH = "high";
+    private static final String REFRESH_RATE_LOW = "low";
+    private static final String REFRESH_RATE_DEFAULT = "default";
+    private static final String DEFAULT_SCREEN = "unknown";
+    private static final long FROZEN_FRAME_NANOS = 700000000L;
+    private static final int MAX_SCREENS = 100;
+
+    /**
+     * Upper bounds of the frame duration histogram buckets, in milliseconds. Durations above the last bound go to an
+     * extra bucket.
+     */
+    private static final int[] HISTOGRAM_BOUNDS = { 4, 8, 12, 16, 20, 25, 33, 50, 83, 150, 300, 700 };
+
+    /**
+     * Frame stats per screen tag. The stats of the current screen are also kept in a field, so the listener doesn't
+     * need to look them up for each frame.
+     */
+    private final Map<String, FrameStats> frameStats = new HashMap<String, FrameStats>();
+    private volatile FrameStats currentFrameStats;
+    private String currentScreen = DEFAULT_SCREEN;
+    private HandlerThread frameMetricsThread;
+    private Window.OnFrameMetricsAvailableListener frameMetricsListener;
+
+    @Override
+    protected void pluginInitialize() {
+        StartupTimeline.markPluginInitialize(TAG);
+        FlightRecorder.start(this.cordova.getActivity());
+    }
+
+    @Override
+    public boolean execute(String action, JSONArray args, CallbackContext callbackContext) {
+        StartupTimeline.markFirstExecute(TAG);
+        boolean traced = Tracing.beginSection(TAG, action);
+        long start = SystemClock.elapsedRealtime();
+        boolean failed = false;
+
+        try {
+            switch (action) {
+                case "getDisplayModes":
+                    this.getDisplayModes(callbackContext);
+
+                    return true;
+                case "setRefreshRate":
+                    this.setRefreshRate(args.get(0), callbackContext);
+
+                    return true;
+                case "startFrameMetrics":
+                    this.startFrameMetrics(callbackContext);
+
+                    return true;
+                case "stopFrameMetrics":
+                    this.stopFrameMetrics(callbackContext);
+
+                    return true;
+                case "setScreen":
+                    this.setScreen(args.optString(0, DEFAULT_SCREEN));
+                    callbackContext.success();
+
+                    return true;
+                case "getFrameMetrics":
+                    callbackContext.success(this.getFrameMetrics(args.optBoolean(0, false)));
+
+                    return true;
+            }
+        } catch (Throwable e) {
+            failed = true;
+            Log.e(TAG, "Failed executing action: " + action, e);
+            callbackContext.error(e.getMessage());
+        } finally {
+            FlightRecorder.recordAction(TAG, action, SystemClock.elapsedRealtime() - start, failed);
+            if (traced) {
+                Tracing.endSection();
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Called when the WebView navigates or refreshes. The refresh rate and screen set by the previous page are discarded.
+     */
+    @Override
+    public void onReset() {
+        this.setScreen(DEFAULT_SCREEN);
+        this.cordova.getActivity().runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    applyDisplayMode(0, 0);
+                } catch (Exception e) {
+                    Log.e(TAG, "Unable to reset the refresh rate", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Called when the plugin is destroyed. Stops collecting frame metrics.
+     */
+    @Override
+    public void onDestroy() {
+        this.removeFrameMetricsListener();
+    }
+
+    /**
+     * Start collecting the duration of the frames rendered by the activity window.
+     * Frames are processed in a low priority thread and only update preallocated counters, so collection is cheap
+     * enough to be left on.
+     *
+     * @param callbackContext The callback context used when calling back into JavaScript.
+     */
+    private void startFrameMetrics(final CallbackContext callbackContext) {
+        this.cordova.getActivity().runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (Display.this) {
+                    if (frameMetricsListener != null) {
+                        callbackContext.success();
+
+                        return;
+                    }
+
+                    frameMetricsThread = new HandlerThread("MoodleAppFrameMetrics", Process.THREAD_PRIORITY_BACKGROUND);
+                    frameMetricsThread.start();
+                    frameMetricsListener = new Window.OnFrameMetricsAvailableListener() {
+                        @Override
+                        public void onFrameMetricsAvailable(Window window, FrameMetrics metrics, int dropCount) {
+                            recordFrame(metrics, dropCount);
+                        }
+                    };
+
+                    cordova.getActivity().getWindow().addOnFrameMetricsAvailableListener(
+                        frameMetricsListener,
+                        new Handler(frameMetricsThread.getLooper())
+                    );
+                }
+
+                callbackContext.success();
+            }
+        });
+    }
+
+    /**
+     * Stop collecting frame metrics. Collected stats are kept until they're reset.
+     *
+     * @param callbackContext The callback context used when calling back into JavaScript.
+     */
+    private void stopFrameMetrics(final CallbackContext callbackContext) {
+        this.cordova.getActivity().runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                removeFrameMetricsListener();
+                callbackContext.success();
+            }
+        });
+    }
+
+    /**
+     * Remove the frame metrics listener and stop its thread, if collecting.
+     */
+    private synchronized void removeFrameMetricsListener() {
+        if (this.frameMetricsListener == null) {
+            return;
+        }
+
+        try {
+            this.cordova.getActivity().getWindow().removeOnFrameMetricsAvailableListener(this.frameMetricsListener);
+        } catch (Exception e) {
+            // The listener was already removed with the window.
+        }
+
+        this.frameMetricsThread.quitSafely();
+        this.frameMetricsListener = null;
+        this.frameMetricsThread = null;
+    }
+
+    /**
+     * Set the screen the next frames belong to.
+     *
+     * @param screen Screen tag.
+     */
+    private synchronized void setScreen(String screen) {
+        if (screen.equals(this.currentScreen) && this.currentFrameStats != null) {
+            return;
+        }
+
+        FrameStats stats = this.frameStats.get(screen);
+        if (stats == null && this.frameStats.size() < MAX_SCREENS) {
+            stats = new FrameStats();
+            this.frameStats.put(screen, stats);
+        }
+
+        this.currentScreen = screen;
+        this.currentFrameStats = stats;
+    }
+
+    /**
+     * Add a frame to the stats of the current screen. Called in the frame metrics thread.
+     *
+     * @param metrics Frame metrics.
+     * @param dropCount Number of frames whose metrics were dropped since the previous call.
+     */
+    private void recordFrame(FrameMetrics metrics, int dropCount) {
+        if (metrics.getMetric(FrameMetrics.FIRST_DRAW_FRAME) == 1) {
+            // The first frame of a window includes its layout, it isn't a jank.
+            return;
+        }
+
+        FrameStats stats = this.currentFrameStats;
+        if (stats == null) {
+            this.setScreen(this.currentScreen);
+            stats = this.currentFrameStats;
+            if (stats == null) {
+                return;
+            }
+        }
+
+        long deadline = Build.VERSION.SDK_INT >= 31 ? metrics.getMetric(FrameMetrics.DEADLINE) : 0; // Android 12
+        stats.add(metrics.getMetric(FrameMetrics.TOTAL_DURATION), deadline, dropCount);
+    }
+
+    /**
+     * Get the frame stats of each screen.
+     *
+     * @param reset Whether to discard the stats once returned.
+     * @return Frame stats.
+     */
+    private synchronized JSONObject getFrameMetrics(boolean reset) throws JSONException {
+        JSONObject screens = new JSONObject();
+        for (Map.Entry<String, FrameStats> entry : this.frameStats.entrySet()) {
+            screens.put(entry.getKey(), entry.getValue().toJSON());
+        }
+
+        JSONArray bounds = new JSONArray();
+        for (int bound : HISTOGRAM_BOUNDS) {
+            bounds.put(bound);
+        }
+
+        JSONObject result = new JSONObject();
+        result.put("isCollecting", this.frameMetricsListener != null);
+        result.put("currentScreen", this.currentScreen);
+        result.put("histogramBounds", bounds);
+        result.put("screens", screens);
+
+        if (reset) {
+            this.frameStats.clear();
+            this.currentFrameStats = null;
+        }
+
+        return result;
+    }
+
+    /**
+     * Get the display modes supported by the display of the activity, the current one and the one preferred by the window.
+     *
+     * @param callbackContext The callback context used when calling back into JavaScript.
+     */
+    private void getDisplayModes(final CallbackContext callbackContext) {
+        this.cordova.getActivity().runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    android.view.Display display = getDisplay();
+                    JSONArray modes = new JSONArray();
+
+                    for (android.view.Display.Mode mode : display.getSupportedModes()) {
+                        modes.put(modeToJSON(mode));
+                    }
+
+                    WindowManager.LayoutParams attributes = cordova.getActivity().getWindow().getAttributes();
+                    JSONObject result = new JSONObject();
+                    result.put("currentMode", modeToJSON(display.getMode()));
+                    result.put("supportedModes", modes);
+                    result.put("preferredModeId", attributes.preferredDisplayModeId);
+                    result.put("preferredRefreshRate", (double) attributes.preferredRefreshRate);
+
+                    callbackContext.success(result);
+                } catch (Exception e) {
+                    Log.e(TAG, "Unable to get display modes", e);
+                    callbackContext.error(e.getMessage());
+                }
+            }
+        });
+    }
+
+    /**
+     * Set the preferred refresh rate of the activity window. Only modes with the current resolution are considered,
+     * so the content isn't resized. The system may ignore the preference, e.g. if the user disabled high refresh rates.
+     *
+     * @param rate "high" for the highest rate, "low" for the lowest rate, "default" to let the system decide, or the
+     *             rate in Hz to use the closest supported rate.
+     * @param callbackContext The callback context used when calling back into JavaScript.
+     */
+    private void setRefreshRate(final Object rate, final CallbackContext callbackContext) throws JSONException {
+        final float targetRate;
+        if (REFRESH_RATE_HIGH.equals(rate) || REFRESH_RATE_LOW.equals(rate)) {
+            targetRate = 0; // Not used, the highest or lowest rate is used instead.
+        } else if (REFRESH_RATE_DEFAULT.equals(rate)) {
+            targetRate = -1;
+        } else if (rate instanceof Number) {
+            targetRate = ((Number) rate).floatValue();
+        } else {
+            throw new JSONException("Invalid refresh rate: " + rate);
+        }
+
+        this.cordova.getActivity().runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (targetRate < 0) {
+                        applyDisplayMode(0, 0);
+                        callbackContext.success();
+
+                        return;
+                    }
+
+                    android.view.Display.Mode mode;
+                    if (REFRESH_RATE_HIGH.equals(rate) || REFRESH_RATE_LOW.equals(rate)) {
+                        mode = findExtremeMode(getDisplay(), REFRESH_RATE_HIGH.equals(rate));
+                    } else {
+                        mode = findClosestMode(getDisplay(), targetRate);
+                    }
+                    applyDisplayMode(mode.getModeId(), mode.getRefreshRate());
+                    FlightRecorder.recordState("refreshRate", Math.round(mode.getRefreshRate()));
+
+                    callbackContext.success(modeToJSON(mode));
+                } catch (Exception e) {
+                    Log.e(TAG, "Unable to set the refresh rate", e);
+                    callbackContext.error(e.getMessage());
+                }
+            }
+        });
+    }
+
+    /**
+     * Find the supported mode with the current resolution that has the highest or lowest refresh rate.
+     *
+     * @param display Display.
+     * @param highest Whether to find the highest rate, or the lowest.
+     * @return Mode found, the current mode if no other mode has a higher (or lower) rate.
+     */
+    private android.view.Display.Mode findExtremeMode(android.view.Display display, boolean highest) {
+        android.view.Display.Mode current = display.getMode();
+        android.view.Display.Mode found = current;
+
+        for (android.view.Display.Mode mode : display.getSupportedModes()) {
+            if (mode.getPhysicalWidth() != current.getPhysicalWidth() || mode.getPhysicalHeight() != current.getPhysicalHeight()) {
+                continue;
+            }
+
+            if (highest ? mode.getRefreshRate() > found.getRefreshRate() : mode.getRefreshRate() < found.getRefreshRate()) {
+                found = mode;
+            }
+        }
+
+        return found;
+    }
+
+    /**
+     * Find the supported mode with the current resolution whose refresh rate is closest to a target.
+     *
+     * @param display Display.
+     * @param targetRate Target refresh rate, in Hz.
+     * @return Closest mode.
+     */
+    private android.view.Display.Mode findClosestMode(android.view.Display display, float targetRate) {
+        android.view.Display.Mode current = display.getMode();
+        android.view.Display.Mode closest = current;
+
+        for (android.view.Display.Mode mode : display.getSupportedModes()) {
+            if (mode.getPhysicalWidth() != current.getPhysicalWidth() || mode.getPhysicalHeight() != current.getPhysicalHeight()) {
+                continue;
+            }
+
+            if (Math.abs(mode.getRefreshRate() - targetRate) < Math.abs(closest.getRefreshRate() - targetRate)) {
+                closest = mode;
+            }
+        }
+
+        return closest;
+    }
+
+    /**
+     * Set the preferred display mode of the activity window. Must be called in the UI thread.
+     * The attributes are only updated if they change, setting them triggers a new layout of the window.
+     *
+     * @param modeId Preferred mode ID, 0 for no preference.
+     * @param refreshRate Preferred refresh rate, 0 for no preference.
+     */
+    private void applyDisplayMode(int modeId, float refreshRate) {
+        Window window = this.cordova.getActivity().getWindow();
+        WindowManager.LayoutParams attributes = window.getAttributes();
+
+        if (attributes.preferredDisplayModeId == modeId && attributes.preferredRefreshRate == refreshRate) {
+            return;
+        }
+
+        attributes.preferredDisplayModeId = modeId;
+        attributes.preferredRefreshRate = refreshRate;
+        window.setAttributes(attributes);
+    }
+
+    /**
+     * Get the display the activity is shown in.
+     *
+     * @return Display.
+     */
+    private android.view.Display getDisplay() {
+        Activity activity = this.cordova.getActivity();
+
+        if (Build.VERSION.SDK_INT >= 30) { // Android 11
+            return activity.getDisplay();
+        }
+
+        return activity.getWindowManager().getDefaultDisplay();
+    }
+
+    /**
+     * Convert a display mode to JSON.
+     *
+     * @param mode Display mode.
+     * @return JSON object.
+     */
+    private JSONObject modeToJSON(android.view.Display.Mode mode) throws JSONException {
+        JSONObject result = new JSONObject();
+        result.put("id", mode.getModeId());
+        result.put("width", mode.getPhysicalWidth());
+        result.put("height", mode.getPhysicalHeight());
+        result.put("refreshRate", (double) mode.getRefreshRate());
+
+        return result;
+    }
+
+    /**
+     * Frame stats of a screen. Adding a frame only updates preallocated counters.
+     */
+    private static class FrameStats {
+
+        private final long[] histogram = new long[HISTOGRAM_BOUNDS.length + 1];
+        private long frames = 0;
+        private long slowFrames = 0;
+        private long frozenFrames = 0;
+        private long droppedFrames = 0;
+        private long totalDurationNanos = 0;
+        private long maxDurationNanos = 0;
+
+        /**
+         * Add a frame.
+         *
+         * @param durationNanos Total duration of the frame.
+         * @param deadlineNanos Deadline of the frame, 0 if unknown. If unknown, 16ms is used like Android vitals.
+         * @param dropCount Number of frames whose metrics were dropped before this one.
+         */
+        synchronized void add(long durationNanos, long deadlineNanos, int dropCount) {
+            long durationMs = durationNanos / 1000000;
+            int bucket = 0;
+            while (bucket < HISTOGRAM_BOUNDS.length && durationMs > HISTOGRAM_BOUNDS[bucket]) {
+                bucket++;
+            }
+
+            histogram[bucket]++;
+            frames++;
+            droppedFrames += dropCount;
+            totalDurationNanos += durationNanos;
+            maxDurationNanos = Math.max(maxDurationNanos, durationNanos);
+
+            if (durationNanos > (deadlineNanos > 0 ? deadlineNanos : 16000000L)) {
+                slowFrames++;
+            }
+            if (durationNanos > FROZEN_FRAME_NANOS) {
+                frozenFrames++;
+            }
+        }
+
+        synchronized JSONObject toJSON() throws JSONException {
+            JSONArray buckets = new JSONArray();
+            for (long count : histogram) {
+                buckets.put(count);
+            }
+
+            JSONObject result = new JSONObject();
+            result.put("frames", frames);
+            result.put("slowFrames", slowFrames);
+            result.put("frozenFrames", frozenFrames);
+            result.put("droppedFrames", droppedFrames);
+            result.put("meanDurationMs", frames > 0 ? totalDurationNanos / 1e6 / frames : 0);
+            result.put("maxDurationMs", maxDurationNanos / 1e6);
+            result.put("histogram", buckets);
+
+            return result;
+        }
+
+    }
+
+}
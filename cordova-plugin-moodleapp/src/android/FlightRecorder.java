@@ -0,0 +1,325 @@
+// (C) Copyright 2015 Moodle Pty Ltd.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.moodle.moodlemobile;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Records plugin actions, errors and device state changes in a fixed-size ring buffer backed by a memory-mapped file.
+ * The kernel keeps the mapped pages even if the process is killed, so the records of the previous session can be read
+ * on the next launch. Writes don't allocate: records have a fixed size and labels are copied char by char.
+ * The file is mapped in the background. Until then records are kept in a small in-memory buffer and copied to the file
+ * once it's mapped; if that buffer fills up, the newest early records are dropped.
+ */
+public class FlightRecorder {
+
+    private static final String TAG = "FlightRecorder";
+    private static final String FILE_NAME = "moodleapp_flight_recorder.bin";
+
+    public static final int TYPE_ACTION = 1;
+    public static final int TYPE_ERROR = 2;
+    public static final int TYPE_STATE = 3;
+    public static final int TYPE_EVENT = 4;
+
+    private static final int MAGIC = 0x4D464C52; // MFLR.
+    private static final int VERSION = 1;
+    private static final int CAPACITY = 1024;
+    private static final int HEADER_SIZE = 64;
+    private static final int RECORD_SIZE = 64;
+    private static final int LABEL_SIZE = 32;
+    private static final int FILE_SIZE = HEADER_SIZE + CAPACITY * RECORD_SIZE;
+    private static final int EARLY_CAPACITY = 64;
+
+    // Header offsets.
+    private static final int HEADER_MAGIC = 0;
+    private static final int HEADER_VERSION = 4;
+    private static final int HEADER_COUNT = 8;
+    private static final int HEADER_SESSION_START = 16;
+
+    // Record offsets.
+    private static final int RECORD_TIME = 0;
+    private static final int RECORD_ELAPSED = 8;
+    private static final int RECORD_VALUE = 16;
+    private static final int RECORD_TYPE = 24;
+    private static final int RECORD_LABEL_LENGTH = 28;
+    private static final int RECORD_LABEL = 32;
+
+    private static final Object lock = new Object();
+    private static boolean started = false;
+    private static final CountDownLatch mapped = new CountDownLatch(1);
+    private static MappedByteBuffer buffer;
+    private static long count;
+    private static byte[] previousSession;
+    private static ByteBuffer earlyBuffer = ByteBuffer.allocate(EARLY_CAPACITY * RECORD_SIZE);
+    private static int earlyCount = 0;
+
+    private FlightRecorder() {}
+
+    /**
+     * Start recording, if not started already. The file is mapped in the background, records written before that
+     * are buffered in memory.
+     *
+     * @param context Context.
+     */
+    public static void start(final Context context) {
+        synchronized (lock) {
+            if (started) {
+                return;
+            }
+            started = true;
+        }
+
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                map(context.getApplicationContext());
+            }
+        }, TAG).start();
+    }
+
+    private static void map(Context context) {
+        try {
+            mapFile(context);
+        } finally {
+            mapped.countDown();
+        }
+    }
+
+    private static void mapFile(Context context) {
+        try {
+            File file = new File(context.getFilesDir(), FILE_NAME);
+            RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+            randomAccessFile.setLength(FILE_SIZE);
+            FileChannel channel = randomAccessFile.getChannel();
+            MappedByteBuffer mappedBuffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, FILE_SIZE);
+            // The mapping stays valid after closing the file.
+            randomAccessFile.close();
+
+            byte[] previous = null;
+            if (mappedBuffer.getInt(HEADER_MAGIC) == MAGIC && mappedBuffer.getInt(HEADER_VERSION) == VERSION) {
+                previous = new byte[FILE_SIZE];
+                mappedBuffer.get(previous);
+            }
+
+            mappedBuffer.putInt(HEADER_MAGIC, MAGIC);
+            mappedBuffer.putInt(HEADER_VERSION, VERSION);
+            mappedBuffer.putLong(HEADER_COUNT, 0);
+            mappedBuffer.putLong(HEADER_SESSION_START, System.currentTimeMillis());
+
+            synchronized (lock) {
+                // Copy the records written while the file was being mapped.
+                for (int i = 0; i < earlyCount; i++) {
+                    int position = HEADER_SIZE + i * RECORD_SIZE;
+                    for (int offset = 0; offset < RECORD_SIZE; offset++) {
+                        mappedBuffer.put(position + offset, earlyBuffer.get(i * RECORD_SIZE + offset));
+                    }
+                }
+
+                previousSession = previous;
+                count = earlyCount;
+                buffer = mappedBuffer;
+                buffer.putLong(HEADER_COUNT, count);
+                earlyBuffer = null;
+                earlyCount = 0;
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Unable to map flight recorder file", e);
+        }
+    }
+
+    /**
+     * Record a plugin action.
+     *
+     * @param plugin Plugin name.
+     * @param action Action name.
+     * @param duration Duration of the action in milliseconds.
+     * @param failed Whether the action failed.
+     */
+    public static void recordAction(String plugin, String action, long duration, boolean failed) {
+        record(failed ? TYPE_ERROR : TYPE_ACTION, plugin, action, duration);
+    }
+
+    /**
+     * Record a device state change.
+     *
+     * @param state State name.
+     * @param value New value.
+     */
+    public static void recordState(String state, long value) {
+        record(TYPE_STATE, state, null, value);
+    }
+
+    /**
+     * Record a device state change with a detail, e.g. the transport of a network change.
+     *
+     * @param state State name.
+     * @param detail State detail.
+     * @param value New value.
+     */
+    public static void recordState(String state, String detail, long value) {
+        record(TYPE_STATE, state, detail, value);
+    }
+
+    /**
+     * Record an event.
+     *
+     * @param plugin Plugin name.
+     * @param event Event name.
+     */
+    public static void recordEvent(String plugin, String event) {
+        record(TYPE_EVENT, plugin, event, 0);
+    }
+
+    /**
+     * Write a record in the ring buffer, overwriting the oldest one if it's full.
+     *
+     * @param type Record type.
+     * @param prefix First part of the label.
+     * @param suffix Second part of the label, null if none.
+     * @param value Record value.
+     */
+    private static void record(int type, String prefix, String suffix, long value) {
+        synchronized (lock) {
+            if (buffer == null) {
+                // Not mapped yet, or mapping failed.
+                if (earlyBuffer != null && earlyCount < EARLY_CAPACITY) {
+                    writeRecord(earlyBuffer, earlyCount * RECORD_SIZE, type, prefix, suffix, value);
+                    earlyCount++;
+                }
+
+                return;
+            }
+
+            writeRecord(buffer, HEADER_SIZE + (int) (count % CAPACITY) * RECORD_SIZE, type, prefix, suffix, value);
+            count++;
+            buffer.putLong(HEADER_COUNT, count);
+        }
+    }
+
+    private static void writeRecord(ByteBuffer target, int position, int type, String prefix, String suffix, long value) {
+        target.putLong(position + RECORD_TIME, System.currentTimeMillis());
+        target.putLong(position + RECORD_ELAPSED, SystemClock.elapsedRealtime());
+        target.putLong(position + RECORD_VALUE, value);
+        target.putInt(position + RECORD_TYPE, type);
+
+        int length = writeLabel(target, position + RECORD_LABEL, 0, prefix);
+        if (suffix != null) {
+            length = writeLabel(target, position + RECORD_LABEL, length, ".");
+            length = writeLabel(target, position + RECORD_LABEL, length, suffix);
+        }
+        target.putInt(position + RECORD_LABEL_LENGTH, length);
+    }
+
+    private static int writeLabel(ByteBuffer target, int position, int length, String text) {
+        for (int i = 0; i < text.length() && length < LABEL_SIZE; i++, length++) {
+            char character = text.charAt(i);
+            target.put(position + length, (byte) (character < 128 ? character : '?'));
+        }
+
+        return length;
+    }
+
+    /**
+     * Flush the records to disk. Used before killing the process on purpose.
+     */
+    public static void flush() {
+        synchronized (lock) {
+            if (buffer != null) {
+                buffer.force();
+            }
+        }
+    }
+
+    /**
+     * Get the records of the previous session. It waits for the file to be mapped, so don't call it in the main thread.
+     *
+     * @param timeout Maximum time to wait for the file to be mapped, in milliseconds.
+     * @return Previous session start and its records, oldest first. Null if there's no previous session, recording
+     * wasn't started or the file wasn't mapped in time.
+     */
+    public static JSONObject getPreviousSession(long timeout) throws JSONException, InterruptedException {
+        synchronized (lock) {
+            if (!started) {
+                return null;
+            }
+        }
+        if (!mapped.await(timeout, TimeUnit.MILLISECONDS)) {
+            return null;
+        }
+
+        byte[] data;
+        synchronized (lock) {
+            data = previousSession;
+        }
+        if (data == null) {
+            return null;
+        }
+
+        ByteBuffer previous = ByteBuffer.wrap(data);
+        long total = previous.getLong(HEADER_COUNT);
+        long first = Math.max(0, total - CAPACITY);
+        JSONArray records = new JSONArray();
+
+        for (long index = first; index < total; index++) {
+            int position = HEADER_SIZE + (int) (index % CAPACITY) * RECORD_SIZE;
+            int labelLength = Math.min(LABEL_SIZE, Math.max(0, previous.getInt(position + RECORD_LABEL_LENGTH)));
+            JSONObject record = new JSONObject();
+            record.put("time", previous.getLong(position + RECORD_TIME));
+            record.put("elapsed", previous.getLong(position + RECORD_ELAPSED));
+            record.put("type", getTypeName(previous.getInt(position + RECORD_TYPE)));
+            record.put("label", new String(data, position + RECORD_LABEL, labelLength, StandardCharsets.US_ASCII));
+            record.put("value", previous.getLong(position + RECORD_VALUE));
+            records.put(record);
+        }
+
+        JSONObject session = new JSONObject();
+        session.put("sessionStart", previous.getLong(HEADER_SESSION_START));
+        session.put("totalRecords", total);
+        session.put("records", records);
+
+        return session;
+    }
+
+    private static String getTypeName(int type) {
+        switch (type) {
+            case TYPE_ACTION:
+                return "action";
+            case TYPE_ERROR:
+                return "error";
+            case TYPE_STATE:
+                return "state";
+            case TYPE_EVENT:
+                return "event";
+            default:
+                return "unknown";
+        }
+    }
+
+}
@@ -14,8 +14,12 @@
 
 package com.moodle.moodlemobile;
 
+import android.os.SystemClock;
 import android.util.Log;
 import android.os.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+
 import org.json.JSONArray;
 import org.json.JSONObject;
 import org.apache.cordova.CordovaPlugin;
@@ -32,13 +36,27 @@ public class InstallReferrer extends CordovaPlugin implements InstallReferrerSta
     private static final int UNKNOWN_ERROR = 1;
     private static final int FEATURE_NOT_SUPPORTED = 2;
     private static final int SERVICE_UNAVAILABLE = 3;
+    private static final String CONNECTION_FLOW = "connection";
 
     private InstallReferrerClient referrerClient;
-    private CallbackContext callbackContext;
+    private final List<CallbackContext> pendingCallbacks = new ArrayList<CallbackContext>();
     private JSONObject referrerResult;
+    private int connectionCount = 0;
+    private int tracedConnectionCookie = 0; // Cookie of the connection section being traced, 0 if none.
+
+    @Override
+    protected void pluginInitialize() {
+        StartupTimeline.markPluginInitialize(TAG);
+        FlightRecorder.start(this.cordova.getActivity());
+    }
 
     @Override
     public boolean execute(String action, JSONArray args, CallbackContext callbackContext) {
+        StartupTimeline.markFirstExecute(TAG);
+        boolean traced = Tracing.beginSection(TAG, action);
+        long start = SystemClock.elapsedRealtime();
+        boolean failed = false;
+
         try {
             switch (action) {
                 case "getReferrer":
@@ -47,9 +65,15 @@ public class InstallReferrer extends CordovaPlugin implements InstallReferrerSta
                     return true;
             }
         } catch (Throwable e) {
+            failed = true;
             Log.e(TAG, "Failed executing action: " + action, e);
             callbackContext.error(e.getMessage());
             callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, UNKNOWN_ERROR));
+        } finally {
+            FlightRecorder.recordAction(TAG, action, SystemClock.elapsedRealtime() - start, failed);
+            if (traced) {
+                Tracing.endSection();
+            }
         }
 
         return false;
@@ -60,32 +84,81 @@ public class InstallReferrer extends CordovaPlugin implements InstallReferrerSta
      *
      * @param callbackContext The callback context used when calling back into JavaScript.
      */
-    private void getReferrer(CallbackContext callbackContext) {
+    private synchronized void getReferrer(CallbackContext callbackContext) {
         if (this.referrerResult != null) {
             callbackContext.success(this.referrerResult);
 
             return;
         }
 
-        this.callbackContext = callbackContext;
+        this.pendingCallbacks.add(callbackContext);
+        if (this.pendingCallbacks.size() > 1) {
+            // A connection is already in progress, this callback will be answered when it finishes.
+            return;
+        }
 
         try {
             if (this.referrerClient == null) {
                 this.referrerClient = InstallReferrerClient.newBuilder(this.cordova.getActivity().getApplicationContext()).build();
             }
 
+            int cookie = ++this.connectionCount;
+            if (Tracing.beginAsyncSection(TAG, CONNECTION_FLOW, cookie)) {
+                this.tracedConnectionCookie = cookie;
+            }
             this.referrerClient.startConnection(this);
         } catch (Exception exception) {
             Log.e(TAG, "startConnection error: " + exception.getMessage());
-            callbackContext.error(exception.getMessage());
-            callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, UNKNOWN_ERROR));
+            this.sendError(exception.getMessage(), UNKNOWN_ERROR);
+            this.endConnectionSection();
         }
     }
 
     /**
-     * Get referral data from an already established connection and pass it to current callback context.
+     * End the trace section of the current connection, if any. The cookie is captured when the connection starts, so
+     * the right section is ended even if tracing was disabled in the meantime.
+     */
+    private void endConnectionSection() {
+        if (this.tracedConnectionCookie == 0) {
+            return;
+        }
+
+        Tracing.endAsyncSection(TAG, CONNECTION_FLOW, this.tracedConnectionCookie);
+        this.tracedConnectionCookie = 0;
+    }
+
+    /**
+     * Send the referrer data to all pending callbacks.
+     */
+    private void sendSuccess() {
+        for (CallbackContext callbackContext : this.pendingCallbacks) {
+            callbackContext.success(this.referrerResult);
+        }
+
+        this.pendingCallbacks.clear();
+    }
+
+    /**
+     * Send an error to all pending callbacks.
+     *
+     * @param message Error message.
+     * @param code Error code.
+     */
+    private void sendError(String message, int code) {
+        for (CallbackContext callbackContext : this.pendingCallbacks) {
+            callbackContext.error(message);
+            callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, code));
+        }
+
+        this.pendingCallbacks.clear();
+    }
+
+    /**
+     * Get referral data from an already established connection and pass it to pending callback contexts.
      */
     private void getReferralData() {
+        boolean traced = Tracing.beginSection(TAG, "getReferralData");
+
         try {
             ReferrerDetails response = referrerClient.getInstallReferrer();
             JSONObject referrerResult = new JSONObject();
@@ -95,29 +168,25 @@ public class InstallReferrer extends CordovaPlugin implements InstallReferrerSta
             referrerResult.put("appInstallTime", response.getInstallBeginTimestampSeconds());
             referrerResult.put("instantExperienceLaunched", response.getGooglePlayInstantParam());
             this.referrerResult = referrerResult;
-
-            if (this.callbackContext != null) {
-                this.callbackContext.success(this.referrerResult);
-            }
+            this.sendSuccess();
         } catch (Exception exception) {
             Log.e(TAG, "getReferralData error: " + exception.getMessage());
-            if (this.callbackContext != null) {
-                this.callbackContext.error(exception.getMessage());
-                this.callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, UNKNOWN_ERROR));
+            this.sendError(exception.getMessage(), UNKNOWN_ERROR);
+        } finally {
+            try {
+                this.referrerClient.endConnection();
+            } catch (Exception exception) {
+                // Ignore errors.
             }
 
-            this.referrerClient.endConnection();
-        }
-
-        try {
-            this.referrerClient.endConnection();
-        } catch (Exception exception) {
-            // Ignore errors.
+            if (traced) {
+                Tracing.endSection();
+            }
         }
     }
 
     @Override
-    public void onInstallReferrerSetupFinished(int responseCode) {
+    public synchronized void onInstallReferrerSetupFinished(int responseCode) {
         switch (responseCode) {
             case InstallReferrerClient.InstallReferrerResponse.OK:
                 // Connection established.
@@ -125,24 +194,26 @@ public class InstallReferrer extends CordovaPlugin implements InstallReferrerSta
                 break;
             case InstallReferrerClient.InstallReferrerResponse.FEATURE_NOT_SUPPORTED:
                 // API not available on the current Play Store app.
-                if (this.callbackContext != null) {
-                    this.callbackContext.error("Referrer feature not supported.");
-                    this.callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, FEATURE_NOT_SUPPORTED));
-                }
+                this.sendError("Referrer feature not supported.", FEATURE_NOT_SUPPORTED);
                 break;
             case InstallReferrerClient.InstallReferrerResponse.SERVICE_UNAVAILABLE:
                 // Connection couldn't be established.
-                if (this.callbackContext != null) {
-                    this.callbackContext.error("Referrer service unavailable.");
-                    this.callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, SERVICE_UNAVAILABLE));
-                }
+                this.sendError("Referrer service unavailable.", SERVICE_UNAVAILABLE);
+                break;
+            default:
+                // Don't leave pending callbacks waiting, new calls wouldn't start a connection.
+                this.sendError("Referrer connection failed.", UNKNOWN_ERROR);
                 break;
         }
+
+        this.endConnectionSection();
     }
 
     @Override
-    public void onInstallReferrerServiceDisconnected() {
-        // Nothing to do.
+    public synchronized void onInstallReferrerServiceDisconnected() {
+        // If it disconnects before the setup finishes, pending callbacks won't be answered otherwise.
+        this.sendError("Referrer service disconnected.", SERVICE_UNAVAILABLE);
+        this.endConnectionSection();
     }
 
 }
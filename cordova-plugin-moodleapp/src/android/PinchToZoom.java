@@ -30,13 +30,31 @@ public class PinchToZoom extends CordovaPlugin {
     @Override
     public void initialize(CordovaInterface cordova, CordovaWebView webView) {
         Log.d(TAG, "Initializing pinch-to-zoom");
+        StartupTimeline.markPluginInitialize(TAG);
+        FlightRecorder.start(cordova.getActivity());
 
         super.initialize(cordova, webView);
 
+        // This plugin is loaded on startup, enable the StrictMode monitor here so it covers the whole startup.
+        StrictModeMonitor.enableFromPreferences(cordova.getActivity(), preferences);
+
         WebSettings settings = ((WebView) webView.getView()).getSettings();
         settings.setBuiltInZoomControls(true);
         settings.setDefaultZoom(WebSettings.ZoomDensity.MEDIUM);
         settings.setDisplayZoomControls(false);
         settings.setSupportZoom(true);
     }
+
+    /**
+     * Called when a message is sent to plugins. This plugin is always loaded on startup, so it records when the first
+     * page finishes loading even if no other plugin has been used.
+     */
+    @Override
+    public Object onMessage(String id, Object data) {
+        if ("onPageFinished".equals(id)) {
+            StartupTimeline.markPageFinished();
+        }
+
+        return null;
+    }
 }
@@ -0,0 +1,260 @@
+// (C) Copyright 2015 Moodle Pty Ltd.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.moodle.moodlemobile;
+
+import android.os.Debug;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Samples the resources used by the process at a fixed interval in a low priority thread: Java heap, native heap,
+ * CPU time, threads and open file descriptors. Samples are stored in fixed-size primitive ring buffers, and the thread
+ * count is parsed from /proc/self/stat into a reused buffer. Only counting the open file descriptors allocates, because
+ * it needs to list a directory.
+ */
+public class ResourceSampler {
+
+    private static final String TAG = "ResourceSampler";
+    private static final String PROC_STAT = "/proc/self/stat";
+    private static final File FD_DIR = new File("/proc/self/fd");
+    private static final int STAT_THREADS_FIELD = 20;
+
+    public static final long MIN_INTERVAL = 100;
+
+    private final int capacity;
+    private final long[] times;
+    private final long[] javaHeapUsed;
+    private final long[] javaHeapMax;
+    private final long[] nativeHeapAllocated;
+    private final long[] cpuTime;
+    private final int[] threads;
+    private final int[] fileDescriptors;
+    private final byte[] statBuffer = new byte[1024];
+    private int count = 0;
+
+    private ScheduledExecutorService executor;
+    private RandomAccessFile statFile;
+    private long interval;
+    // Incremented on every start and stop. A task of a previous run may still be waiting for the lock after
+    // shutdownNow, it checks its generation so it doesn't add a sample to the new run.
+    private long generation = 0;
+
+    /**
+     * @param capacity Number of samples kept, older samples are overwritten.
+     */
+    public ResourceSampler(int capacity) {
+        this.capacity = capacity;
+        this.times = new long[capacity];
+        this.javaHeapUsed = new long[capacity];
+        this.javaHeapMax = new long[capacity];
+        this.nativeHeapAllocated = new long[capacity];
+        this.cpuTime = new long[capacity];
+        this.threads = new int[capacity];
+        this.fileDescriptors = new int[capacity];
+    }
+
+    /**
+     * Start sampling, or change the interval if already started.
+     *
+     * @param interval Time between samples, in milliseconds.
+     */
+    public synchronized void start(long interval) {
+        interval = Math.max(interval, MIN_INTERVAL);
+        if (this.executor != null && this.interval == interval) {
+            return;
+        }
+
+        this.stop();
+        this.interval = interval;
+        final long runGeneration = ++this.generation;
+
+        try {
+            this.statFile = new RandomAccessFile(PROC_STAT, "r");
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to open " + PROC_STAT + ", threads won't be sampled", e);
+        }
+
+        this.executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_LOWEST);
+                        runnable.run();
+                    }
+                }, "MoodleAppResourceSampler");
+                thread.setDaemon(true);
+
+                return thread;
+            }
+        });
+        this.executor.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                sample(runGeneration);
+            }
+        }, 0, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop sampling. Samples are kept until cleared.
+     */
+    public synchronized void stop() {
+        if (this.executor == null) {
+            return;
+        }
+
+        this.executor.shutdownNow();
+        this.executor = null;
+        this.generation++;
+
+        if (this.statFile != null) {
+            try {
+                this.statFile.close();
+            } catch (IOException e) {
+                // Ignore errors.
+            }
+            this.statFile = null;
+        }
+    }
+
+    /**
+     * Take a sample and store it in the ring buffers.
+     *
+     * @param runGeneration Generation of the run that scheduled the sample.
+     */
+    private synchronized void sample(long runGeneration) {
+        if (runGeneration != this.generation) {
+            return;
+        }
+
+        Runtime runtime = Runtime.getRuntime();
+        String[] fds = FD_DIR.list();
+        int index = this.count % this.capacity;
+
+        this.times[index] = SystemClock.elapsedRealtime();
+        this.javaHeapUsed[index] = runtime.totalMemory() - runtime.freeMemory();
+        this.javaHeapMax[index] = runtime.maxMemory();
+        this.nativeHeapAllocated[index] = Debug.getNativeHeapAllocatedSize();
+        this.cpuTime[index] = Process.getElapsedCpuTime();
+        this.threads[index] = this.readThreadCount();
+        this.fileDescriptors[index] = fds != null ? fds.length : -1;
+        this.count++;
+    }
+
+    /**
+     * Read the number of threads of the process from /proc/self/stat.
+     *
+     * @return Number of threads, -1 if it couldn't be read.
+     */
+    private int readThreadCount() {
+        if (this.statFile == null) {
+            return -1;
+        }
+
+        try {
+            this.statFile.seek(0);
+            int length = this.statFile.read(this.statBuffer);
+
+            // Fields are separated by spaces, but the process name can contain spaces. It ends with the last ')'.
+            int position = length - 1;
+            while (position >= 0 && this.statBuffer[position] != ')') {
+                position--;
+            }
+
+            int field = 2;
+            int value = 0;
+            for (position++; position < length; position++) {
+                byte character = this.statBuffer[position];
+                if (character == ' ') {
+                    if (field == STAT_THREADS_FIELD) {
+                        return value;
+                    }
+                    field++;
+                    value = 0;
+                } else if (field == STAT_THREADS_FIELD) {
+                    value = value * 10 + (character - '0');
+                }
+            }
+        } catch (IOException e) {
+            // Ignore errors, the value will be reported as unknown.
+        }
+
+        return -1;
+    }
+
+    /**
+     * Get the samples, oldest first. Each value is an array with one entry per sample.
+     *
+     * @param clear Whether to discard the samples once returned.
+     * @return Samples.
+     */
+    public synchronized JSONObject toJSON(boolean clear) throws JSONException {
+        int size = Math.min(this.count, this.capacity);
+        int first = this.count - size;
+        JSONArray times = new JSONArray();
+        JSONArray javaHeapUsed = new JSONArray();
+        JSONArray javaHeapMax = new JSONArray();
+        JSONArray nativeHeapAllocated = new JSONArray();
+        JSONArray cpuTime = new JSONArray();
+        JSONArray threads = new JSONArray();
+        JSONArray fileDescriptors = new JSONArray();
+
+        for (int i = first; i < this.count; i++) {
+            int index = i % this.capacity;
+            times.put(this.times[index]);
+            javaHeapUsed.put(this.javaHeapUsed[index]);
+            javaHeapMax.put(this.javaHeapMax[index]);
+            nativeHeapAllocated.put(this.nativeHeapAllocated[index]);
+            cpuTime.put(this.cpuTime[index]);
+            threads.put(this.threads[index]);
+            fileDescriptors.put(this.fileDescriptors[index]);
+        }
+
+        JSONObject result = new JSONObject();
+        result.put("isStarted", this.executor != null);
+        result.put("interval", this.interval);
+        result.put("capacity", this.capacity);
+        result.put("droppedSamples", first);
+        result.put("time", times);
+        result.put("javaHeapUsed", javaHeapUsed);
+        result.put("javaHeapMax", javaHeapMax);
+        result.put("nativeHeapAllocated", nativeHeapAllocated);
+        result.put("cpuTime", cpuTime);
+        result.put("threads", threads);
+        result.put("fileDescriptors", fileDescriptors);
+
+        if (clear) {
+            this.count = 0;
+        }
+
+        return result;
+    }
+
+}
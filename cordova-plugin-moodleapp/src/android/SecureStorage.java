@@ -15,11 +15,13 @@
 package com.moodle.moodlemobile;
 
 import android.os.Build;
+import android.os.SystemClock;
 import android.util.Log;
 import android.content.Context;
 import android.content.SharedPreferences;
 import java.security.GeneralSecurityException;
 import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
@@ -35,34 +37,87 @@ public class SecureStorage extends CordovaPlugin {
     private static final String TAG = "SecureStorage";
     private static final String SHARED_PREFS_NAME = "moodlemobile_shared_prefs";
 
+    /**
+     * Locks per collection, so operations in the same collection don't interleave when executed from several threads.
+     */
+    private final ConcurrentHashMap<String, Object> collectionLocks = new ConcurrentHashMap<String, Object>();
+
+    @Override
+    protected void pluginInitialize() {
+        StartupTimeline.markPluginInitialize(TAG);
+        FlightRecorder.start(this.cordova.getActivity());
+    }
+
     @Override
     public boolean execute(String action, JSONArray args, CallbackContext callbackContext) {
+        StartupTimeline.markFirstExecute(TAG);
+        StrictModeMonitor.applyToCurrentThread();
+        boolean traced = Tracing.beginSection(TAG, action);
+        long start = SystemClock.elapsedRealtime();
+        boolean failed = false;
+
         try {
             switch (action) {
                 case "get":
-                    callbackContext.success(this.get(args.getJSONArray(0), args.getString(1)));
+                    JSONObject values;
+                    synchronized (this.getCollectionLock(args.getString(1))) {
+                        values = this.get(args.getJSONArray(0), args.getString(1));
+                    }
+                    callbackContext.success(values);
 
                     return true;
                 case "store":
-                    this.store(args.getJSONObject(0), args.getString(1));
+                    synchronized (this.getCollectionLock(args.getString(1))) {
+                        this.store(args.getJSONObject(0), args.getString(1));
+                    }
                     callbackContext.success();
 
                     return true;
                 case "delete":
-                    this.delete(args.getJSONArray(0), args.getString(1));
+                    synchronized (this.getCollectionLock(args.getString(1))) {
+                        this.delete(args.getJSONArray(0), args.getString(1));
+                    }
+                    callbackContext.success();
+
+                    return true;
+                case "compareAndSet":
+                    boolean swapped;
+                    synchronized (this.getCollectionLock(args.getString(3))) {
+                        swapped = this.compareAndSet(
+                            args.getString(0),
+                            args.isNull(1) ? null : args.getString(1),
+                            args.isNull(2) ? null : args.getString(2),
+                            args.getString(3)
+                        );
+                    }
+                    callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, swapped));
+
+                    return true;
+                case "update":
+                    synchronized (this.getCollectionLock(args.getString(2))) {
+                        this.update(args.getJSONObject(0), args.getJSONArray(1), args.getString(2));
+                    }
                     callbackContext.success();
 
                     return true;
                 case "deleteCollection":
-                    this.deleteCollection(args.getString(0));
+                    synchronized (this.getCollectionLock(args.getString(0))) {
+                        this.deleteCollection(args.getString(0));
+                    }
                     callbackContext.success();
 
                     return true;
             }
         } catch (Throwable e) {
+            failed = true;
             Log.e(TAG, "Failed executing action: " + action, e);
             callbackContext.error(e.getMessage());
             callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR));
+        } finally {
+            FlightRecorder.recordAction(TAG, action, SystemClock.elapsedRealtime() - start, failed);
+            if (traced) {
+                Tracing.endSection();
+            }
         }
 
         return false;
@@ -148,6 +203,80 @@ public class SecureStorage extends CordovaPlugin {
         editor.apply();
     }
 
+    /**
+     * Store a value only if the current value matches the expected one.
+     * Must be called holding the collection lock, so no other operation can change the value between the check and the write.
+     *
+     * @param name Name of the value.
+     * @param expected Expected current value, null if the value shouldn't exist.
+     * @param value New value, null to delete it.
+     * @param collection The collection where the value is stored.
+     * @return Whether the value matched and was replaced.
+     */
+    private boolean compareAndSet(String name, String expected, String value, String collection)
+            throws GeneralSecurityException, IOException {
+        if (name == null || name.isEmpty()) {
+            return false;
+        }
+
+        Context context = this.cordova.getActivity().getApplicationContext();
+        SharedPreferences sharedPreferences = getSharedPreferences(collection);
+        String rawValue = sharedPreferences.getString(name, null);
+        String currentValue = rawValue == null ? null : EncryptionHandler.Companion.decrypt(context, rawValue);
+
+        Log.d(TAG, "Compare and set value with name " + name);
+
+        if (expected == null ? currentValue != null : !expected.equals(currentValue)) {
+            return false;
+        }
+
+        SharedPreferences.Editor editor = sharedPreferences.edit();
+        if (value == null) {
+            editor.remove(name);
+        } else {
+            editor.putString(name, EncryptionHandler.Companion.encrypt(context, value));
+        }
+        editor.apply();
+
+        return true;
+    }
+
+    /**
+     * Store and delete several values at once. Either all the changes are applied or none of them.
+     * If a name is both stored and deleted, it will be stored.
+     *
+     * @param data Data to store, using a name -> value format.
+     * @param names Names to delete.
+     * @param collection The collection where to apply the changes.
+     */
+    private void update(JSONObject data, JSONArray names, String collection)
+            throws GeneralSecurityException, IOException, JSONException {
+        Context context = this.cordova.getActivity().getApplicationContext();
+        SharedPreferences.Editor editor = getSharedPreferences(collection).edit();
+        JSONArray dataNames = data.names();
+
+        Log.d(TAG, "Update values with names " + dataNames + ", deleting " + names.toString());
+
+        for(int i = 0; i < names.length(); i++) {
+            String name = names.optString(i);
+
+            if (name != null && !name.isEmpty()) {
+                editor.remove(name);
+            }
+        }
+
+        // Encrypt everything before applying, a failure leaves the collection untouched.
+        for(int i = 0; dataNames != null && i < dataNames.length(); i++) {
+            String name = dataNames.optString(i);
+
+            if (name != null && !name.isEmpty()) {
+                editor.putString(name, EncryptionHandler.Companion.encrypt(context, data.getString(name)));
+            }
+        }
+
+        editor.apply();
+    }
+
     /**
      * Delete all values from a collection.
      *
@@ -162,6 +291,26 @@ public class SecureStorage extends CordovaPlugin {
         editor.apply();
     }
 
+    /**
+     * Get the lock object of a collection.
+     *
+     * @param collection The collection.
+     * @return Lock object.
+     */
+    private Object getCollectionLock(String collection) {
+        Object lock = this.collectionLocks.get(collection);
+
+        if (lock == null) {
+            Object newLock = new Object();
+            lock = this.collectionLocks.putIfAbsent(collection, newLock);
+            if (lock == null) {
+                lock = newLock;
+            }
+        }
+
+        return lock;
+    }
+
     /**
      * Get shared preferences instance.
      *
@@ -0,0 +1,336 @@
+// (C) Copyright 2015 Moodle Pty Ltd.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.moodle.moodlemobile;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.PackageInfo;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.adobe.phonegap.push.EncryptionHandler;
+
+/**
+ * Short, time-boxed benchmark of the operations the app relies on: secure storage encryption, preferences, file I/O
+ * and integer CPU throughput. Results are cached by app version, so the benchmark only runs once per version.
+ * The time budget is checked between steps, so it can only be exceeded by the duration of a single step. Tests that
+ * don't fit in the remaining budget are skipped, and scores are computed from the measured durations.
+ */
+public class SelfBenchmark {
+
+    private static final String TAG = "SelfBenchmark";
+    private static final String PREFS_NAME = "MoodleAppBenchmark";
+    private static final String SCRATCH_PREFS_NAME = "MoodleAppBenchmark_scratch";
+    private static final String SCRATCH_FILE_NAME = "moodleapp_benchmark.tmp";
+    private static final String RESULT_KEY = "result";
+    private static final String VERSION_KEY = "version";
+    private static final int TESTS = 5;
+    private static final int MAX_ITERATIONS = 50;
+    private static final int IO_FILE_SIZE = 4 * 1024 * 1024;
+    private static final int IO_CHUNK_SIZE = 64 * 1024;
+    private static final int IO_RANDOM_BLOCK_SIZE = 4 * 1024;
+
+    private static final Object lock = new Object();
+
+    private SelfBenchmark() {}
+
+    /**
+     * Get the benchmark scores, running the benchmark if there are no scores for the current app version.
+     * It blocks the calling thread for about the time budget, don't call it from the main thread.
+     *
+     * @param context Context.
+     * @param timeBudget Maximum time to spend running the benchmark, in milliseconds.
+     * @param force Whether to run the benchmark even if there are cached scores.
+     * @return Benchmark scores.
+     */
+    public static JSONObject run(Context context, long timeBudget, boolean force) throws Exception {
+        synchronized (lock) {
+            SharedPreferences preferences = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+            String version = getAppVersion(context);
+
+            if (!force && version.equals(preferences.getString(VERSION_KEY, null))) {
+                String cachedResult = preferences.getString(RESULT_KEY, null);
+                if (cachedResult != null) {
+                    return new JSONObject(cachedResult);
+                }
+            }
+
+            long start = SystemClock.elapsedRealtime();
+            long deadline = start + timeBudget;
+            long testBudget = timeBudget / TESTS;
+            JSONObject result = new JSONObject();
+            result.put("version", version);
+            result.put("timestamp", System.currentTimeMillis());
+            result.put("encryption", runEncryptionTest(context, getTestEnd(testBudget, deadline)));
+            result.put("preferences", runPreferencesTest(context, getTestEnd(testBudget, deadline)));
+            result.put("io", runIoTest(context, getTestEnd(testBudget, deadline)));
+            result.put("cpu", runCpuTest(getTestEnd(testBudget * 2, deadline)));
+            result.put("durationMs", SystemClock.elapsedRealtime() - start);
+
+            preferences.edit().putString(VERSION_KEY, version).putString(RESULT_KEY, result.toString()).apply();
+
+            return result;
+        }
+    }
+
+    /**
+     * Get when a test has to end.
+     *
+     * @param budget Time budget of the test, in milliseconds.
+     * @param deadline When the whole benchmark has to end.
+     * @return End time of the test, it's never after the deadline.
+     */
+    private static long getTestEnd(long budget, long deadline) {
+        return Math.min(SystemClock.elapsedRealtime() + budget, deadline);
+    }
+
+    /**
+     * Measure the latency of the encryption used by SecureStorage.
+     */
+    private static JSONObject runEncryptionTest(Context context, long end) throws JSONException {
+        JSONObject result = new JSONObject();
+        long encryptTime = 0;
+        long decryptTime = 0;
+        int iterations = 0;
+
+        try {
+            while (iterations < MAX_ITERATIONS && SystemClock.elapsedRealtime() < end) {
+                long start = System.nanoTime();
+                String encrypted = EncryptionHandler.Companion.encrypt(context, "benchmark-" + iterations);
+                long encryptedAt = System.nanoTime();
+                EncryptionHandler.Companion.decrypt(context, encrypted);
+                encryptTime += encryptedAt - start;
+                decryptTime += System.nanoTime() - encryptedAt;
+                iterations++;
+            }
+
+            if (iterations > 0) {
+                result.put("encryptMs", encryptTime / 1e6 / iterations);
+                result.put("decryptMs", decryptTime / 1e6 / iterations);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Encryption test failed", e);
+            result.put("error", e.getMessage());
+        }
+        result.put("iterations", iterations);
+
+        return result;
+    }
+
+    /**
+     * Measure the latency of SharedPreferences synchronous writes and reads, using a scratch file.
+     */
+    private static JSONObject runPreferencesTest(Context context, long end) throws JSONException {
+        JSONObject result = new JSONObject();
+        if (SystemClock.elapsedRealtime() >= end) {
+            result.put("iterations", 0);
+
+            return result;
+        }
+
+        SharedPreferences preferences = context.getSharedPreferences(SCRATCH_PREFS_NAME, Context.MODE_PRIVATE);
+        long writeTime = 0;
+        long readTime = 0;
+        int iterations = 0;
+
+        while (iterations < MAX_ITERATIONS && SystemClock.elapsedRealtime() < end) {
+            long start = System.nanoTime();
+            preferences.edit().putString("value" + (iterations % 10), "benchmark-" + iterations).commit();
+            long writtenAt = System.nanoTime();
+            preferences.getString("value" + (iterations % 10), null);
+            writeTime += writtenAt - start;
+            readTime += System.nanoTime() - writtenAt;
+            iterations++;
+        }
+
+        preferences.edit().clear().commit();
+
+        if (iterations > 0) {
+            result.put("writeMs", writeTime / 1e6 / iterations);
+            result.put("readUs", readTime / 1e3 / iterations);
+        }
+        result.put("iterations", iterations);
+
+        return result;
+    }
+
+    /**
+     * Measure sequential and random file I/O throughput in the cache directory. The file is written until it reaches
+     * its maximum size or half of the test budget is used, so slow storage writes less data.
+     * Reads are likely served from the page cache, so they show the best case.
+     */
+    private static JSONObject runIoTest(Context context, long end) throws JSONException {
+        JSONObject result = new JSONObject();
+        long now = SystemClock.elapsedRealtime();
+        if (now >= end) {
+            result.put("skipped", true);
+
+            return result;
+        }
+
+        File file = new File(context.getCacheDir(), SCRATCH_FILE_NAME);
+        long writeEnd = now + (end - now) / 2;
+        int fileSize = 0;
+        byte[] chunk = new byte[IO_CHUNK_SIZE];
+        new Random(0).nextBytes(chunk);
+
+        try {
+            long start = System.nanoTime();
+            FileOutputStream output = new FileOutputStream(file);
+            try {
+                while (fileSize < IO_FILE_SIZE && (fileSize == 0 || SystemClock.elapsedRealtime() < writeEnd)) {
+                    output.write(chunk);
+                    fileSize += IO_CHUNK_SIZE;
+                }
+                output.getFD().sync();
+            } finally {
+                output.close();
+            }
+            result.put("fileSize", fileSize);
+            result.put("sequentialWriteMBps", getThroughput(fileSize, System.nanoTime() - start));
+
+            start = System.nanoTime();
+            FileInputStream input = new FileInputStream(file);
+            try {
+                while (input.read(chunk) > 0) {
+                    // Just read.
+                }
+            } finally {
+                input.close();
+            }
+            result.put("sequentialReadMBps", getThroughput(fileSize, System.nanoTime() - start));
+
+            Random random = new Random(0);
+            int blocks = fileSize / IO_RANDOM_BLOCK_SIZE;
+            int reads = 0;
+            start = System.nanoTime();
+            RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+            try {
+                while (reads < blocks && SystemClock.elapsedRealtime() < end) {
+                    randomAccessFile.seek((long) random.nextInt(blocks) * IO_RANDOM_BLOCK_SIZE);
+                    randomAccessFile.readFully(chunk, 0, IO_RANDOM_BLOCK_SIZE);
+                    reads++;
+                }
+            } finally {
+                randomAccessFile.close();
+            }
+            long elapsed = System.nanoTime() - start;
+            if (reads > 0) {
+                result.put("randomReadMBps", getThroughput((long) reads * IO_RANDOM_BLOCK_SIZE, elapsed));
+                result.put("randomReadIops", Math.round(reads / (elapsed / 1e9)));
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "I/O test failed", e);
+            result.put("error", e.getMessage());
+        } finally {
+            file.delete();
+        }
+
+        return result;
+    }
+
+    private static double getThroughput(long bytes, long nanos) {
+        return bytes / (1024.0 * 1024.0) / Math.max(nanos / 1e9, 1e-9);
+    }
+
+    /**
+     * Measure integer throughput using one thread, and then one thread per available core.
+     * Scores are millions of operations per second, using the time each thread actually ran.
+     */
+    private static JSONObject runCpuTest(long end) throws Exception {
+        final int threads = Runtime.getRuntime().availableProcessors();
+        JSONObject result = new JSONObject();
+        result.put("threads", threads);
+        long now = SystemClock.elapsedRealtime();
+        if (now >= end) {
+            result.put("skipped", true);
+
+            return result;
+        }
+
+        final long sliceTime = (end - now) / 2;
+        result.put("singleCoreScore", runCpuSlice(sliceTime) / 1e6);
+
+        final double[] scores = new double[threads];
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            final int index = i;
+            workers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    scores[index] = runCpuSlice(sliceTime);
+                }
+            }, TAG + "-" + i);
+            workers[i].start();
+        }
+
+        double total = 0;
+        for (int i = 0; i < threads; i++) {
+            workers[i].join();
+            total += scores[i];
+        }
+
+        result.put("multiCoreScore", total / 1e6);
+
+        return result;
+    }
+
+    /**
+     * Run integer operations (xorshift) for some time.
+     *
+     * @param time Time to run, in milliseconds.
+     * @return Operations per second, using the measured duration.
+     */
+    private static double runCpuSlice(long time) {
+        long start = System.nanoTime();
+        long end = SystemClock.elapsedRealtime() + time;
+        long operations = 0;
+        long state = 88172645463325252L;
+
+        while (SystemClock.elapsedRealtime() < end) {
+            for (int i = 0; i < 10000; i++) {
+                state ^= state << 13;
+                state ^= state >>> 7;
+                state ^= state << 17;
+            }
+            operations += 30000;
+        }
+
+        // Use the state so the loop can't be optimized away.
+        if (state == 0) {
+            operations++;
+        }
+
+        return operations / Math.max((System.nanoTime() - start) / 1e9, 1e-9);
+    }
+
+    private static String getAppVersion(Context context) throws Exception {
+        PackageInfo info = context.getPackageManager().getPackageInfo(context.getPackageName(), 0);
+        long versionCode = Build.VERSION.SDK_INT >= 28 ? info.getLongVersionCode() : info.versionCode; // Android 9
+
+        return info.versionName + " (" + versionCode + ")";
+    }
+
+}
@@ -0,0 +1,161 @@
+// (C) Copyright 2015 Moodle Pty Ltd.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.moodle.moodlemobile;
+
+import android.os.Build;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Records monotonic timestamps of the native startup steps, so cold start can be compared between releases.
+ * Activity creation can't be hooked from a plugin, but onload plugins are initialized while the Cordova activity is
+ * being created, so the first plugin initialization marks it.
+ */
+public class StartupTimeline {
+
+    private static final String TAG = "StartupTimeline";
+    private static final Map<String, Long> marks = new LinkedHashMap<String, Long>();
+    private static long softRestartStart = -1;
+    private static long softRestartEnd = -1;
+
+    private StartupTimeline() {}
+
+    /**
+     * Record a startup step. Only the first occurrence of each step is recorded.
+     *
+     * @param name Step name.
+     */
+    public static void mark(String name) {
+        long time = SystemClock.elapsedRealtimeNanos();
+
+        synchronized (marks) {
+            if (!marks.containsKey(name)) {
+                marks.put(name, time);
+            }
+        }
+    }
+
+    /**
+     * Record the initialization of a plugin.
+     *
+     * @param plugin Plugin name.
+     */
+    public static void markPluginInitialize(String plugin) {
+        mark("firstPluginInitialize");
+        mark(plugin + ".initialize");
+    }
+
+    /**
+     * Record the first action executed by a plugin.
+     *
+     * @param plugin Plugin name.
+     */
+    public static void markFirstExecute(String plugin) {
+        mark(plugin + ".firstExecute");
+    }
+
+    /**
+     * Record the start of a soft restart, discarding the previous one.
+     */
+    public static void markSoftRestartStart() {
+        synchronized (marks) {
+            softRestartStart = SystemClock.elapsedRealtimeNanos();
+            softRestartEnd = -1;
+        }
+    }
+
+    /**
+     * Record that a page finished loading. The first page is a startup step, later pages are only recorded if a soft
+     * restart is in progress. When the first page finishes the timeline is logged, so startup can be measured
+     * without JS (see scripts/startup-benchmark.js).
+     */
+    public static void markPageFinished() {
+        boolean firstPage;
+
+        synchronized (marks) {
+            firstPage = !marks.containsKey("firstPageFinished");
+            if (firstPage) {
+                marks.put("firstPageFinished", SystemClock.elapsedRealtimeNanos());
+            } else if (softRestartStart >= 0 && softRestartEnd < 0) {
+                softRestartEnd = SystemClock.elapsedRealtimeNanos();
+            }
+        }
+
+        if (firstPage) {
+            try {
+                Log.i(TAG, "Startup timeline: " + toJSON());
+            } catch (JSONException e) {
+                // Ignore errors, it's only logged for benchmarks.
+            }
+        }
+    }
+
+    /**
+     * Get the recorded steps.
+     *
+     * @return Process start and current time in milliseconds of elapsed realtime, and list of steps with their time in
+     *         milliseconds since process start. If the process start time isn't available, the first step is used.
+     *         If there was a soft restart, its start, end and duration are included too.
+     */
+    public static JSONObject toJSON() throws JSONException {
+        double now = SystemClock.elapsedRealtimeNanos() / 1e6;
+        JSONObject timeline = new JSONObject();
+        JSONArray steps = new JSONArray();
+        double processStart = -1;
+
+        if (Build.VERSION.SDK_INT >= 24) { // Android 7
+            processStart = Process.getStartElapsedRealtime();
+        }
+
+        synchronized (marks) {
+            for (Map.Entry<String, Long> entry : marks.entrySet()) {
+                double time = entry.getValue() / 1e6;
+                if (processStart < 0) {
+                    processStart = time;
+                }
+
+                JSONObject step = new JSONObject();
+                step.put("name", entry.getKey());
+                step.put("time", time - processStart);
+                steps.put(step);
+            }
+
+            if (softRestartStart >= 0) {
+                JSONObject softRestart = new JSONObject();
+                softRestart.put("start", softRestartStart / 1e6 - processStart);
+                if (softRestartEnd >= 0) {
+                    softRestart.put("end", softRestartEnd / 1e6 - processStart);
+                    softRestart.put("duration", (softRestartEnd - softRestartStart) / 1e6);
+                }
+                timeline.put("softRestart", softRestart);
+            }
+        }
+
+        timeline.put("processStart", processStart < 0 ? now : processStart);
+        timeline.put("now", now);
+        timeline.put("marks", steps);
+
+        return timeline;
+    }
+
+}
@@ -0,0 +1,250 @@
+// (C) Copyright 2015 Moodle Pty Ltd.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.moodle.moodlemobile;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.StrictMode;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+import org.apache.cordova.CordovaPreferences;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Installs StrictMode policies that detect disk and network access in the main and bridge threads, and leaked
+ * resources in the whole VM. Violations are kept in a bounded buffer so they can be reported to JS.
+ * It can only be enabled in debuggable builds. Before Android 9 there is no penalty listener, so violations are only
+ * logged to logcat.
+ */
+public class StrictModeMonitor {
+
+    private static final String TAG = "StrictModeMonitor";
+    public static final String PREFERENCE = "MoodleAppStrictMode";
+    // Thread where the WebView calls the JavaScript interface used by Cordova to execute plugin actions.
+    private static final String BRIDGE_THREAD_NAME = "JavaBridge";
+
+    private static final int CAPACITY = 200;
+    private static final int MAX_STACK_FRAMES = 20;
+
+    private static final Object lock = new Object();
+    private static final JSONObject[] violations = new JSONObject[CAPACITY];
+    private static long count = 0;
+    private static volatile boolean enabled = false;
+    private static Executor listenerExecutor;
+    private static final ThreadLocal<Boolean> threadPolicyApplied = new ThreadLocal<Boolean>();
+
+    private StrictModeMonitor() {}
+
+    /**
+     * Enable the monitor if the Cordova preference is set.
+     *
+     * @param context Context.
+     * @param preferences Cordova preferences.
+     */
+    public static void enableFromPreferences(Context context, CordovaPreferences preferences) {
+        if (preferences != null && preferences.getBoolean(PREFERENCE, false)) {
+            enable(context);
+        }
+    }
+
+    /**
+     * Enable the monitor, if not enabled already. The thread policy is applied to the main thread, and to the calling
+     * thread if it's the bridge thread.
+     *
+     * @param context Context.
+     * @return Whether the monitor is enabled. It's never enabled in non debuggable builds.
+     */
+    public static boolean enable(Context context) {
+        synchronized (lock) {
+            if (enabled) {
+                applyToCurrentThread();
+
+                return true;
+            }
+
+            if ((context.getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) == 0) {
+                Log.w(TAG, "StrictMode can only be enabled in debuggable builds");
+
+                return false;
+            }
+
+            if (Build.VERSION.SDK_INT >= 28) { // Android 9
+                // Violations are reported in their own thread, so building the reports doesn't add more violations.
+                listenerExecutor = Executors.newSingleThreadExecutor();
+            }
+
+            StrictMode.setVmPolicy(buildVmPolicy());
+            enabled = true;
+        }
+
+        Log.i(TAG, "StrictMode monitor enabled");
+        applyToCurrentThread();
+        new Handler(Looper.getMainLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+                applyToCurrentThread();
+            }
+        });
+
+        return true;
+    }
+
+    /**
+     * Apply the thread policy to the calling thread, if the monitor is enabled and it wasn't applied already.
+     * Thread policies are per thread and only the main and bridge threads are monitored, other threads are expected to
+     * block. Calls from other threads, e.g. actions run in the thread pool by Bridge.batch, are ignored.
+     */
+    public static void applyToCurrentThread() {
+        if (!enabled || Boolean.TRUE.equals(threadPolicyApplied.get()) || !isMonitoredThread()) {
+            return;
+        }
+
+        StrictMode.setThreadPolicy(buildThreadPolicy());
+        threadPolicyApplied.set(true);
+    }
+
+    /**
+     * Check whether the calling thread is the main thread or the bridge thread.
+     *
+     * @return Whether the thread should be monitored.
+     */
+    private static boolean isMonitoredThread() {
+        return Looper.myLooper() == Looper.getMainLooper() || BRIDGE_THREAD_NAME.equals(Thread.currentThread().getName());
+    }
+
+    private static StrictMode.ThreadPolicy buildThreadPolicy() {
+        StrictMode.ThreadPolicy.Builder builder = new StrictMode.ThreadPolicy.Builder()
+            .detectDiskReads()
+            .detectDiskWrites()
+            .detectNetwork()
+            .detectCustomSlowCalls()
+            .detectResourceMismatches()
+            .penaltyLog();
+
+        if (Build.VERSION.SDK_INT >= 26) { // Android 8
+            builder.detectUnbufferedIo();
+        }
+        if (Build.VERSION.SDK_INT >= 28) { // Android 9
+            builder.penaltyListener(listenerExecutor, new StrictMode.OnThreadViolationListener() {
+                @Override
+                public void onThreadViolation(android.os.strictmode.Violation violation) {
+                    addViolation("thread", violation);
+                }
+            });
+        }
+
+        return builder.build();
+    }
+
+    private static StrictMode.VmPolicy buildVmPolicy() {
+        StrictMode.VmPolicy.Builder builder = new StrictMode.VmPolicy.Builder()
+            .detectLeakedClosableObjects()
+            .detectLeakedSqlLiteObjects()
+            .detectLeakedRegistrationObjects()
+            .detectActivityLeaks()
+            .detectFileUriExposure()
+            .detectCleartextNetwork()
+            .penaltyLog();
+
+        if (Build.VERSION.SDK_INT >= 26) { // Android 8
+            builder.detectContentUriWithoutPermission();
+        }
+        if (Build.VERSION.SDK_INT >= 28) { // Android 9
+            builder.penaltyListener(listenerExecutor, new StrictMode.OnVmViolationListener() {
+                @Override
+                public void onVmViolation(android.os.strictmode.Violation violation) {
+                    addViolation("vm", violation);
+                }
+            });
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * Add a violation to the buffer, overwriting the oldest one if full.
+     *
+     * @param policy Policy that detected the violation: thread or vm.
+     * @param violation Violation.
+     */
+    private static void addViolation(String policy, Throwable violation) {
+        try {
+            JSONArray stack = new JSONArray();
+            StackTraceElement[] elements = violation.getStackTrace();
+            for (int i = 0; i < elements.length && i < MAX_STACK_FRAMES; i++) {
+                stack.put(elements[i].toString());
+            }
+
+            JSONObject details = new JSONObject();
+            details.put("time", System.currentTimeMillis());
+            details.put("elapsed", SystemClock.elapsedRealtime());
+            details.put("policy", policy);
+            details.put("type", violation.getClass().getSimpleName());
+            details.put("message", violation.getMessage());
+            details.put("stack", stack);
+
+            long total;
+            synchronized (lock) {
+                violations[(int) (count % CAPACITY)] = details;
+                count++;
+                total = count;
+            }
+
+            FlightRecorder.recordState("strictMode", violation.getClass().getSimpleName(), total);
+        } catch (JSONException e) {
+            Log.e(TAG, "Unable to store violation", e);
+        }
+    }
+
+    /**
+     * Get the violations in the buffer, oldest first.
+     *
+     * @param clear Whether to discard the violations once returned.
+     * @return Violations.
+     */
+    public static JSONObject toJSON(boolean clear) throws JSONException {
+        JSONArray list = new JSONArray();
+        long dropped;
+
+        synchronized (lock) {
+            long size = Math.min(count, CAPACITY);
+            dropped = count - size;
+            for (long i = dropped; i < count; i++) {
+                list.put(violations[(int) (i % CAPACITY)]);
+            }
+
+            if (clear) {
+                count = 0;
+            }
+        }
+
+        JSONObject result = new JSONObject();
+        result.put("isEnabled", enabled);
+        result.put("droppedViolations", dropped);
+        result.put("violations", list);
+
+        return result;
+    }
+
+}
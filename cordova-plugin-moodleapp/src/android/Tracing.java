@@ -0,0 +1,116 @@
+// (C) Copyright 2015 Moodle Pty Ltd.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.moodle.moodlemobile;
+
+import android.os.Build;
+import android.os.Trace;
+
+/**
+ * Adds Perfetto/systrace sections for the plugin actions. It's disabled by default and can be switched at runtime.
+ * When disabled, calls return straight away without building section names.
+ */
+public class Tracing {
+
+    private static final int MAX_SECTION_NAME_LENGTH = 127;
+
+    private static volatile boolean enabled = false;
+
+    private Tracing() {}
+
+    /**
+     * Enable or disable tracing.
+     *
+     * @param enabled Whether to enable tracing.
+     */
+    public static void setEnabled(boolean enabled) {
+        Tracing.enabled = enabled;
+    }
+
+    /**
+     * Check whether sections should be recorded.
+     *
+     * @return Whether tracing is enabled and, if the system allows checking it, a trace is being captured.
+     */
+    public static boolean isEnabled() {
+        if (!enabled) {
+            return false;
+        }
+
+        return Build.VERSION.SDK_INT < 29 || Trace.isEnabled(); // Android 10
+    }
+
+    /**
+     * Begin a section for a plugin action. It must be ended in the same thread.
+     *
+     * @param plugin Plugin name.
+     * @param action Action name.
+     * @return Whether the section was started. Only end the section if it was.
+     */
+    public static boolean beginSection(String plugin, String action) {
+        if (!isEnabled()) {
+            return false;
+        }
+
+        Trace.beginSection(getSectionName(plugin, action));
+
+        return true;
+    }
+
+    /**
+     * End the last section started in the current thread.
+     */
+    public static void endSection() {
+        Trace.endSection();
+    }
+
+    /**
+     * Begin an async section, used for flows that end in a different thread or callback. Only available in Android 10+.
+     *
+     * @param plugin Plugin name.
+     * @param flow Flow name.
+     * @param cookie Identifier of the flow instance, the same value must be used to end it.
+     * @return Whether the section was started.
+     */
+    public static boolean beginAsyncSection(String plugin, String flow, int cookie) {
+        if (Build.VERSION.SDK_INT < 29 || !isEnabled()) { // Android 10
+            return false;
+        }
+
+        Trace.beginAsyncSection(getSectionName(plugin, flow), cookie);
+
+        return true;
+    }
+
+    /**
+     * End an async section. It's ended even if tracing was disabled after it started, so it isn't left open.
+     * Ending a section that wasn't started is ignored by the system.
+     *
+     * @param plugin Plugin name.
+     * @param flow Flow name.
+     * @param cookie Identifier used to begin the section.
+     */
+    public static void endAsyncSection(String plugin, String flow, int cookie) {
+        if (Build.VERSION.SDK_INT >= 29) { // Android 10
+            Trace.endAsyncSection(getSectionName(plugin, flow), cookie);
+        }
+    }
+
+    private static String getSectionName(String plugin, String action) {
+        String name = plugin + "." + action;
+
+        return name.length() > MAX_SECTION_NAME_LENGTH ? name.substring(0, MAX_SECTION_NAME_LENGTH) : name;
+    }
+
+}
@@ -6,6 +6,8 @@
 - (void)get:(CDVInvokedUrlCommand*)command;
 - (void)store:(CDVInvokedUrlCommand*)command;
 - (void)delete:(CDVInvokedUrlCommand*)command;
+- (void)compareAndSet:(CDVInvokedUrlCommand*)command;
+- (void)update:(CDVInvokedUrlCommand*)command;
 - (void)deleteCollection:(CDVInvokedUrlCommand*)command;
 
 @end
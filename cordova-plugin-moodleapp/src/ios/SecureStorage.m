@@ -183,6 +183,124 @@
     return SecItemDelete((CFDictionaryRef)query);
 }
 
+- (void)compareAndSet:(CDVInvokedUrlCommand*)command {
+    NSString* name = [command argumentAtIndex:0 withDefault:@""];
+    NSString* expected = [command argumentAtIndex:1 withDefault:nil];
+    NSString* value = [command argumentAtIndex:2 withDefault:nil];
+    NSString* collection = [command argumentAtIndex:3 withDefault:@""];
+
+    NSLog(@"SecureStorage: Compare and set value with name %@ in collection %@", name, collection);
+
+    // Plugin commands are executed in the main thread, no other command can change the value between the check and the write.
+    NSString* storedValue = [self getValue:name inCollection:collection];
+    BOOL matches = [name length] > 0 && (expected == nil ? storedValue == nil : [expected isEqualToString:storedValue]);
+    OSStatus status = errSecSuccess;
+
+    if (matches) {
+        if (value == nil) {
+            status = storedValue == nil ? errSecSuccess : [self deleteName:name fromCollection:collection];
+        } else if (storedValue != nil) {
+            status = [self updateName:name withValue:value inCollection:collection];
+        } else {
+            status = [self addName:name withValue:value inCollection:collection];
+        }
+    }
+
+    CDVPluginResult* pluginResult;
+    if (status != errSecSuccess && status != errSecItemNotFound) {
+        NSLog(@"Error setting value for %@ in collection %@. Status: %d", name, collection, (int) status);
+        pluginResult = [CDVPluginResult resultWithStatus:CDVCommandStatus_ERROR
+            messageAsString:@"Error storing value in secure storage."];
+    } else {
+        pluginResult = [CDVPluginResult resultWithStatus:CDVCommandStatus_OK messageAsBool:matches];
+    }
+
+    [self.commandDelegate sendPluginResult:pluginResult callbackId:command.callbackId];
+}
+
+- (void)update:(CDVInvokedUrlCommand*)command {
+    NSDictionary* data = [command argumentAtIndex:0 withDefault:@{}];
+    NSArray* names = [command argumentAtIndex:1 withDefault:@[]];
+    NSString* collection = [command argumentAtIndex:2 withDefault:@""];
+    BOOL error = false;
+
+    // Variables to be able to rollback changes if something fails.
+    NSMutableArray* insertedNames = [NSMutableArray new];
+    NSMutableDictionary* previousValues = [NSMutableDictionary new];
+
+    NSLog(@"SecureStorage: Update values with names %@ and delete %@ in collection %@", [data allKeys], names, collection);
+
+    for (NSString* name in names) {
+        if ([name length] == 0 || data[name] != nil) {
+            // Names that are also stored will be updated below.
+            continue;
+        }
+
+        NSString* storedValue = [self getValue:name inCollection:collection];
+        if (storedValue == nil) {
+            continue;
+        }
+
+        OSStatus status = [self deleteName:name fromCollection:collection];
+        if (status != errSecSuccess && status != errSecItemNotFound) {
+            NSLog(@"Error deleting entry with name %@ in collection %@. Status: %d", name, collection, (int) status);
+            error = true;
+            break;
+        }
+
+        previousValues[name] = storedValue;
+    }
+
+    for (NSString* name in data) {
+        if (error) {
+            break;
+        }
+        if ([name length] == 0) {
+            continue;
+        }
+
+        OSStatus status;
+        NSString* storedValue = [self getValue:name inCollection:collection];
+
+        if (storedValue != nil) {
+            status = [self updateName:name withValue:data[name] inCollection: collection];
+        } else {
+            status = [self addName:name withValue:data[name] inCollection: collection];
+        }
+
+        if (status != errSecSuccess) {
+            NSLog(@"Error storing value for %@ in collection %@. Status: %d", name, collection, (int) status);
+            error = true;
+        } else if (storedValue != nil) {
+            previousValues[name] = storedValue;
+        } else {
+            [insertedNames addObject:name];
+        }
+    }
+
+    CDVPluginResult* pluginResult;
+    if (error) {
+        // Rollback.
+        for (NSString *name in insertedNames) {
+            [self deleteName:name fromCollection:collection];
+        }
+        for (NSString *name in previousValues) {
+            if ([self getValue:name inCollection:collection] != nil) {
+                [self updateName:name withValue:previousValues[name] inCollection: collection];
+            } else {
+                [self addName:name withValue:previousValues[name] inCollection: collection];
+            }
+        }
+
+        pluginResult = [CDVPluginResult resultWithStatus:CDVCommandStatus_ERROR
+            messageAsString:@"Error updating one or more values in secure storage."];
+    } else {
+        pluginResult = [CDVPluginResult resultWithStatus:CDVCommandStatus_OK];
+    }
+
+    [self.commandDelegate sendPluginResult:pluginResult callbackId:command.callbackId];
+}
+
 - (void)deleteCollection:(CDVInvokedUrlCommand*)command {
     NSString* collection = [command argumentAtIndex:0 withDefault:@""];
 
@@ -12,7 +12,9 @@
 // See the License for the specific language governing permissions and
 // limitations under the License.
 
+import { Bridge } from './plugins/Bridge';
 import { Diagnostic } from './plugins/Diagnostic';
+import { Display } from './plugins/Display';
 import { InstallReferrer } from './plugins/InstallReferrer';
 import { SecureStorage } from './plugins/SecureStorage';
 
@@ -20,6 +22,8 @@ const api: MoodleAppPlugins = {
     secureStorage: new SecureStorage(),
     installReferrer: new InstallReferrer(),
     diagnostic: new Diagnostic(),
+    bridge: new Bridge(),
+    display: new Display(),
 };
 
 // This is necessary to work around the default transpilation behavior,
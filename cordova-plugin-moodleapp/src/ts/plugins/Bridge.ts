@@ -0,0 +1,161 @@
+// (C) Copyright 2015 Moodle Pty Ltd.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+/**
+ * Helpers to reduce the cost of calls through the Cordova bridge.
+ */
+export class Bridge {
+
+    /**
+     * Call several actions of the MoodleApp plugins with a single bridge call.
+     * In Android the entries are executed natively and run in parallel. If the batch has a SecureStorage action that
+     * modifies data, the SecureStorage entries run in order. In other platforms each entry is a separate call.
+     * Actions that send more than one result, like Diagnostic.watchState, permission requests, and actions that restart
+     * or leave the app can't be used in a batch.
+     *
+     * @param entries Actions to call.
+     * @returns Result of each entry, in the same order.
+     */
+    async batch(entries: BridgeBatchEntry[]): Promise<BridgeBatchResult[]> {
+        if (cordova.platformId !== 'android') {
+            return Promise.all(entries.map((entry) => this.execEntry(entry)));
+        }
+
+        return new Promise((resolve, reject) => {
+            cordova.exec(resolve, reject, 'Bridge', 'batch', [entries]);
+        });
+    }
+
+    /**
+     * Android only. Measure the overhead of the bridge by sending pings to the native side.
+     * Stats are aggregated natively and include the samples of previous measures, unless they're reset.
+     *
+     * @param options Options.
+     * @param options.count Number of pings to send.
+     * @param options.payloadSize Size of the payload of each ping, in characters.
+     * @param options.burst Whether to send all the pings at once instead of waiting for each reply.
+     * @param options.reset Whether to discard the samples once the stats are calculated.
+     * @returns Stats of the measures, null in other platforms.
+     */
+    async measureLatency(
+        options: { count?: number; payloadSize?: number; burst?: boolean; reset?: boolean } = {},
+    ): Promise<BridgeLatencyStats | null> {
+        if (cordova.platformId !== 'android') {
+            return null;
+        }
+
+        const count = options.count ?? 20;
+        const payload = 'x'.repeat(options.payloadSize ?? 0);
+        const samples: { roundTrip: number; replyDelay: number }[] = [];
+
+        if (options.burst) {
+            const pings: Promise<{ roundTrip: number; replyDelay: number }>[] = [];
+            for (let i = 0; i < count; i++) {
+                pings.push(this.ping(payload));
+            }
+
+            samples.push(...await Promise.all(pings));
+        } else {
+            for (let i = 0; i < count; i++) {
+                samples.push(await this.ping(payload));
+            }
+        }
+
+        return new Promise((resolve, reject) => {
+            cordova.exec(resolve, reject, 'Bridge', 'getPingStats', [samples, options.reset ?? false]);
+        });
+    }
+
+    /**
+     * Send a ping to the native side.
+     *
+     * @param payload Payload to send.
+     * @returns Round trip, measured with the JS monotonic clock, and delay between the native reply and its reception.
+     */
+    protected ping(payload: string): Promise<{ roundTrip: number; replyDelay: number }> {
+        return new Promise((resolve, reject) => {
+            const start = performance.now();
+
+            cordova.exec(
+                (result: { repliedAt: number }) => {
+                    const end = performance.now();
+
+                    resolve({
+                        roundTrip: end - start,
+                        replyDelay: performance.timeOrigin + end - result.repliedAt,
+                    });
+                },
+                reject,
+                'Bridge',
+                'ping',
+                [payload, performance.timeOrigin + start],
+            );
+        });
+    }
+
+    /**
+     * Call the action of a batch entry on its own.
+     *
+     * @param entry Batch entry.
+     * @returns Entry result.
+     */
+    protected execEntry(entry: BridgeBatchEntry): Promise<BridgeBatchResult> {
+        return new Promise((resolve) => {
+            cordova.exec(
+                (result) => resolve({ success: true, result }),
+                (error) => resolve({ success: false, error }),
+                entry.plugin,
+                entry.action,
+                entry.args ?? [],
+            );
+        });
+    }
+
+}
+
+/**
+ * Stats of a bridge measure, in milliseconds.
+ */
+export type BridgeMeasureStats = {
+    count: number;
+    mean?: number;
+    p50?: number;
+    p90?: number;
+    p99?: number;
+    max?: number;
+};
+
+/**
+ * Stats of the bridge latency.
+ */
+export type BridgeLatencyStats = {
+    roundTrip: BridgeMeasureStats; // From JS send to JS receive.
+    sendDelay: BridgeMeasureStats; // From JS send to native receive, includes the bridge queue.
+    nativeTime: BridgeMeasureStats; // Time spent in the native plugin.
+    replyDelay: BridgeMeasureStats; // From native reply to JS receive.
+};
+
+export type BridgeBatchEntry = {
+    plugin: 'SecureStorage' | 'Diagnostic' | 'InstallReferrer';
+    action: string;
+    args?: unknown[];
+};
+
+export type BridgeBatchResult = {
+    success: true;
+    result: unknown;
+} | {
+    success: false;
+    error: unknown;
+};
@@ -32,12 +32,39 @@ export class Diagnostic {
     declare permission: typeof permission;
 
     declare protected requestInProgress: boolean;
+    declare protected stateCallbacks: Record<string, ((state: unknown) => void)[]>;
+    declare protected startupMarks: { name: string; time: number }[];
 
     constructor() {
         this.permissionStatus = permissionStatus;
         this.permission = permission;
 
         this.requestInProgress = false;
+        this.stateCallbacks = {};
+        this.startupMarks = [];
+    }
+
+    /**
+     * Android only. Restart the app.
+     * - soft: reload only the WebView document, keeping the native process, plugins and caches. The promise is resolved
+     *   right before reloading, the reload duration can be checked in the startup timeline once the app has loaded.
+     * - warm: recreate the main activity.
+     * - cold: restart the whole process.
+     *
+     * @param mode Restart mode.
+     */
+    async restart(mode: 'soft' | 'warm' | 'cold'): Promise<void> {
+        await this.execAndroid('restart', [mode]);
+    }
+
+    /**
+     * Android only. Enable or disable Perfetto/systrace sections for the native plugin actions.
+     * When disabled, tracing has no cost.
+     *
+     * @param enabled Whether to enable tracing.
+     */
+    async setTracingEnabled(enabled: boolean): Promise<void> {
+        await this.execAndroid('setTracingEnabled', [enabled]);
     }
 
     /**
@@ -99,6 +126,24 @@ export class Diagnostic {
         });
     }
 
+    /**
+     * Android only. Get the status of every permission supported by the plugin, in a single call.
+     *
+     * @returns Details of each permission, indexed by permission name. Null in other platforms.
+     */
+    async getAllPermissionStatuses(): Promise<Record<string, DiagnosticPermissionDetails> | null> {
+        const permissions = await this.execAndroid<Record<string, DiagnosticPermissionDetails>>('getAllPermissionStatuses');
+        if (!permissions) {
+            return null;
+        }
+
+        for (const name in permissions) {
+            permissions[name].status = this.convertPermissionStatus(permissions[name].status);
+        }
+
+        return permissions;
+    }
+
     /**
      * Android only. Requests app to be granted authorisation for a runtime permission.
      *
@@ -135,6 +180,286 @@ export class Diagnostic {
         });
     }
 
+    /**
+     * Android only. Get the memory details of the device, useful to decide the size of caches or the number of parallel tasks.
+     *
+     * @returns Memory profile, null in other platforms.
+     */
+    getMemoryProfile(): Promise<DiagnosticMemoryProfile | null> {
+        return this.execAndroid<DiagnosticMemoryProfile>('getMemoryProfile');
+    }
+
+    /**
+     * Android only. Get the CPU topology of the device, useful to decide the number of workers or concurrent downloads.
+     *
+     * @returns CPU profile, null in other platforms.
+     */
+    getCpuProfile(): Promise<DiagnosticCpuProfile | null> {
+        return this.execAndroid<DiagnosticCpuProfile>('getCpuProfile');
+    }
+
+    /**
+     * Android only. Get the power state of the device: battery, charging, battery saver, doze and thermal status.
+     *
+     * @returns Power state, null in other platforms.
+     */
+    getPowerState(): Promise<DiagnosticPowerState | null> {
+        return this.execAndroid<DiagnosticPowerState>('getPowerState');
+    }
+
+    /**
+     * Android only. Listen to changes in the power state. The callback is called straight away with the current state.
+     *
+     * @param callback Function to call when the state changes.
+     * @returns Function to stop listening.
+     */
+    onPowerStateChange(callback: (state: DiagnosticPowerState) => void): () => void {
+        return this.watchState('power', callback);
+    }
+
+    /**
+     * Android only. Get the storage capacity of the device and the space used by the app directories.
+     *
+     * @param refresh Whether to discard the directory sizes cached by previous calls. Files modified in place are only
+     * detected when refreshing.
+     * @returns Storage profile, null in other platforms.
+     */
+    getStorageProfile(refresh = false): Promise<DiagnosticStorageProfile | null> {
+        return this.execAndroid<DiagnosticStorageProfile>('getStorageProfile', [refresh]);
+    }
+
+    /**
+     * Android only. Get the scores of a short benchmark of the operations the app relies on, to choose performance tiers.
+     * The benchmark runs in the background and its scores are cached until the app is updated.
+     *
+     * @param options Options.
+     * @returns Benchmark scores, null in other platforms.
+     */
+    runSelfBenchmark(options: { force?: boolean; timeBudget?: number } = {}): Promise<DiagnosticBenchmarkScores | null> {
+        return this.execAndroid<DiagnosticBenchmarkScores>(
+            'runSelfBenchmark',
+            [options.force ?? false, options.timeBudget ?? 3000],
+        );
+    }
+
+    /**
+     * Android only. Get the state of the default network. The native side keeps it in memory, so this is cheap to call.
+     *
+     * @returns Network state, null in other platforms.
+     */
+    getNetworkState(): Promise<DiagnosticNetworkState | null> {
+        return this.execAndroid<DiagnosticNetworkState>('getNetworkState');
+    }
+
+    /**
+     * Android only. Listen to changes in the default network. The callback is called straight away with the current state.
+     * Small changes in the bandwidth estimates are not notified.
+     *
+     * @param callback Function to call when the state changes.
+     * @returns Function to stop listening.
+     */
+    onNetworkStateChange(callback: (state: DiagnosticNetworkState) => void): () => void {
+        return this.watchState('network', callback);
+    }
+
+    /**
+     * Android only. Get what limits the background work of the app, to size or postpone work the system would throttle.
+     *
+     * @returns Background state, null in other platforms.
+     */
+    getBackgroundState(): Promise<DiagnosticBackgroundState | null> {
+        return this.execAndroid<DiagnosticBackgroundState>('getBackgroundState');
+    }
+
+    /**
+     * Android only. Listen to changes in the background state. The callback is called straight away with the current state.
+     * The standby bucket and background restriction are only checked again when the app resumes.
+     *
+     * @param callback Function to call when the state changes.
+     * @returns Function to stop listening.
+     */
+    onBackgroundStateChange(callback: (state: DiagnosticBackgroundState) => void): () => void {
+        return this.watchState('background', callback);
+    }
+
+    /**
+     * Android only. Get the network traffic of the app since the device booted.
+     *
+     * @returns Traffic counters, null in other platforms.
+     */
+    getTrafficStats(): Promise<DiagnosticTrafficStats | null> {
+        return this.execAndroid<DiagnosticTrafficStats>('getTrafficStats');
+    }
+
+    /**
+     * Android only. Open a named traffic checkpoint, to measure the traffic of an operation when it's closed.
+     * Opening a checkpoint that is already open restarts it.
+     *
+     * @param name Checkpoint name.
+     * @returns Traffic counters when the checkpoint was opened, null in other platforms.
+     */
+    startTrafficCheckpoint(name: string): Promise<DiagnosticTrafficStats | null> {
+        return this.execAndroid<DiagnosticTrafficStats>('startTrafficCheckpoint', [name]);
+    }
+
+    /**
+     * Android only. Close a named traffic checkpoint. Traffic is counted for the whole app, so it includes any other
+     * transfer done while the checkpoint was open.
+     *
+     * @param name Checkpoint name.
+     * @returns Traffic since the checkpoint was opened, time is its duration. Null in other platforms.
+     */
+    stopTrafficCheckpoint(name: string): Promise<DiagnosticTrafficStats | null> {
+        return this.execAndroid<DiagnosticTrafficStats>('stopTrafficCheckpoint', [name]);
+    }
+
+    /**
+     * Android only. Get the StrictMode violations detected in the main and bridge threads and in the VM. The monitor is
+     * only available in debuggable builds, it's enabled by enableDebug or the MoodleAppStrictMode preference.
+     *
+     * @param clear Whether to discard the violations once returned.
+     * @returns Violations, null in other platforms.
+     */
+    getStrictModeViolations(clear = false): Promise<DiagnosticStrictModeReport | null> {
+        return this.execAndroid<DiagnosticStrictModeReport>('getStrictModeViolations', [clear]);
+    }
+
+    /**
+     * Android only. Start sampling the resources used by the app process in a low priority native thread, or change the
+     * interval if already started. Samples are kept in a fixed-size buffer, the oldest ones are overwritten.
+     *
+     * @param interval Time between samples, in milliseconds. Minimum 100.
+     */
+    async startResourceSampler(interval = 5000): Promise<void> {
+        await this.execAndroid('startResourceSampler', [interval]);
+    }
+
+    /**
+     * Android only. Stop sampling the resources used by the app process. Samples taken so far are kept.
+     */
+    async stopResourceSampler(): Promise<void> {
+        await this.execAndroid('stopResourceSampler');
+    }
+
+    /**
+     * Android only. Get the samples taken by the resource sampler, oldest first.
+     *
+     * @param clear Whether to discard the samples once returned.
+     * @returns Samples, null in other platforms.
+     */
+    getResourceSeries(clear = false): Promise<DiagnosticResourceSeries | null> {
+        return this.execAndroid<DiagnosticResourceSeries>('getResourceSeries', [clear]);
+    }
+
+    /**
+     * Android only. Get the native flight recorder log of the previous session: plugin actions, errors and device state
+     * changes recorded before the app was closed, killed or crashed.
+     *
+     * @returns Previous session log, null if not available.
+     */
+    getPreviousSessionLog(): Promise<DiagnosticSessionLog | null> {
+        return this.execAndroid<DiagnosticSessionLog>('getPreviousSessionLog');
+    }
+
+    /**
+     * Record a JS startup step, it will be returned by getStartupTimeline along with the native steps.
+     *
+     * @param name Step name.
+     */
+    markStartup(name: string): void {
+        this.startupMarks.push({ name, time: performance.now() });
+    }
+
+    /**
+     * Android only. Get the startup timeline, including native and JS steps.
+     *
+     * @returns Startup timeline, null in other platforms.
+     */
+    async getStartupTimeline(): Promise<DiagnosticStartupTimeline | null> {
+        const timeline = await this.execAndroid<DiagnosticNativeStartupTimeline>('getStartupTimeline');
+        const jsNow = performance.now();
+        if (!timeline) {
+            return null;
+        }
+
+        // Both clocks are monotonic but have different origins. Align them assuming the reply was instant,
+        // JS times will be late by the reply latency.
+        const jsOffset = timeline.now - timeline.processStart - jsNow;
+        const marks: DiagnosticStartupMark[] = [
+            ...timeline.marks.map((mark) => ({ ...mark, source: 'native' as const })),
+            { name: 'jsTimeOrigin', time: jsOffset, source: 'js' },
+            ...this.startupMarks.map((mark) => ({ name: mark.name, time: mark.time + jsOffset, source: 'js' as const })),
+        ];
+
+        return {
+            processStart: timeline.processStart,
+            marks: marks.sort((a, b) => a.time - b.time),
+            softRestart: timeline.softRestart,
+        };
+    }
+
+    /**
+     * Android only. Listen to changes in a native state. The native side only keeps one listener per state, so
+     * all the callbacks for the same state share it.
+     *
+     * @param name State name.
+     * @param callback Function to call when the state changes.
+     * @returns Function to stop listening.
+     */
+    protected watchState<T>(name: string, callback: (state: T) => void): () => void {
+        if (cordova.platformId !== 'android') {
+            return () => {
+                // Nothing to stop.
+            };
+        }
+
+        const stateCallback = callback as (state: unknown) => void;
+        const callbacks = this.stateCallbacks[name] ?? [];
+        this.stateCallbacks[name] = callbacks;
+        callbacks.push(stateCallback);
+
+        if (callbacks.length === 1) {
+            cordova.exec(
+                (state) => this.stateCallbacks[name]?.forEach((stateCallback) => stateCallback(state)),
+                (error) => console.error(`Error watching ${name} state`, error), // eslint-disable-line no-console
+                'Diagnostic',
+                'watchState',
+                [name],
+            );
+        }
+
+        return () => {
+            const index = callbacks.indexOf(stateCallback);
+            if (index === -1) {
+                return;
+            }
+
+            callbacks.splice(index, 1);
+            if (callbacks.length === 0) {
+                cordova.exec(noop, noop, 'Diagnostic', 'unwatchState', [name]);
+            }
+        };
+    }
+
+    /**
+     * Call an Android only action of the native plugin.
+     *
+     * @param action Action to call.
+     * @param args Arguments of the action.
+     * @returns Result of the action, null in other platforms.
+     */
+    protected execAndroid<T>(action: string, args: unknown[] = []): Promise<T | null> {
+        return new Promise<T | null>((resolve, reject) => {
+            if (cordova.platformId !== 'android') {
+                resolve(null);
+
+                return;
+            }
+
+            cordova.exec(resolve, reject, 'Diagnostic', action, args);
+        });
+    }
+
     /**
      * Convert a permission status so it has the same value in all platforms.
      * Each platform can return a different value for a status, e.g. a granted permission returns 'authorized' in iOS and
@@ -160,6 +485,248 @@ export class Diagnostic {
 
 }
 
+/**
+ * Details of a permission.
+ */
+export type DiagnosticPermissionDetails = {
+    status: string; // Permission status, converted like the rest of statuses.
+    requested: boolean; // Whether the permission has been requested at least once.
+    declared: boolean; // Whether the permission is declared in the app manifest.
+    minSdk?: number; // First Android API level where the permission exists.
+    maxSdk?: number; // Last Android API level where the permission is used.
+    applicable: boolean; // Whether the permission applies to the device Android version.
+};
+
+/**
+ * Memory details of the device and the app process.
+ */
+export type DiagnosticMemoryProfile = {
+    availMem: number; // Available memory in the system, in bytes.
+    totalMem: number; // Total memory accessible by the kernel, in bytes.
+    threshold: number; // Threshold of availMem at which the system starts killing background processes, in bytes.
+    lowMemory: boolean; // Whether the system considers itself to be in a low memory situation.
+    isLowRamDevice: boolean; // Whether the device is considered a low RAM device.
+    memoryClass: number; // Approximate per-application heap limit, in megabytes.
+    largeMemoryClass: number; // Approximate per-application heap limit when using a large heap, in megabytes.
+    mediaPerformanceClass: number; // Media performance class of the device, 0 if not declared.
+};
+
+/**
+ * CPU topology of the device.
+ */
+export type DiagnosticCpuProfile = {
+    architecture: string; // Architecture of the primary ABI, e.g. 'ARMv8'.
+    abis: string[]; // Supported ABIs, in order of preference.
+    cores: number; // Number of cores of the device.
+    onlineCores: number; // Number of cores currently online, the kernel brings cores online and offline on demand.
+    availableCores: number; // Number of cores currently available to the app.
+    maxFrequencies: number[]; // Max frequency of each core in kHz, 0 if unknown.
+    clusters: { maxFrequency: number; cores: number[] }[]; // Cores grouped by max frequency, slowest cluster first.
+    isBigLittle: boolean; // Whether the device has more than one cluster.
+};
+
+/**
+ * Power state of the device.
+ */
+export type DiagnosticPowerState = {
+    batteryLevel: number; // Battery level in percentage, -1 if unknown.
+    isCharging: boolean; // Whether the battery is charging or full.
+    chargePlug: 'ac' | 'usb' | 'wireless' | 'none'; // Power source.
+    isPowerSaveMode: boolean; // Whether battery saver is enabled.
+    isDeviceIdleMode: boolean; // Whether the device is in doze mode.
+    thermalStatus: number; // PowerManager thermal status, from 0 (none) to 6 (shutdown). Always 0 before Android 10.
+    thermalHeadroom?: number; // Thermal headroom, 1 means severe throttling. Only available in Android 11+.
+};
+
+/**
+ * Scores of the self benchmark. Tests that fail include an error instead of their scores.
+ */
+export type DiagnosticBenchmarkScores = {
+    version: string; // App version the scores belong to.
+    timestamp: number; // When the benchmark was run, in milliseconds.
+    durationMs: number; // Time spent running the benchmark. Only exceeds the budget by the duration of a single step.
+    // Scores are missing if the test didn't fit in the time budget.
+    encryption: { encryptMs?: number; decryptMs?: number; iterations: number; error?: string };
+    preferences: { writeMs?: number; readUs?: number; iterations: number };
+    io: {
+        skipped?: boolean;
+        fileSize?: number; // Bytes written, it's smaller if writing the whole file didn't fit in the budget.
+        sequentialWriteMBps?: number;
+        sequentialReadMBps?: number;
+        randomReadMBps?: number;
+        randomReadIops?: number;
+        error?: string;
+    };
+    cpu: {
+        skipped?: boolean;
+        singleCoreScore?: number; // Millions of integer operations per second using one thread.
+        multiCoreScore?: number; // Millions of integer operations per second using one thread per core.
+        threads: number;
+    };
+};
+
+/**
+ * State of the default network.
+ */
+export type DiagnosticNetworkState = {
+    isConnected: boolean; // Whether there's a default network.
+    transport: 'wifi' | 'cellular' | 'ethernet' | 'bluetooth' | 'vpn' | 'other' | 'none'; // Transport of the network.
+    isMetered: boolean; // Whether the network is metered.
+    isRoaming: boolean; // Whether the network is roaming. Always false before Android 9.
+    isValidated: boolean; // Whether the network has been validated to have internet access.
+    linkDownstreamBandwidthKbps: number; // Estimated downstream bandwidth.
+    linkUpstreamBandwidthKbps: number; // Estimated upstream bandwidth.
+};
+
+/**
+ * Limits to the background work of the app.
+ */
+export type DiagnosticBackgroundState = {
+    // App standby bucket. Always unknown before Android 9.
+    standbyBucket: 'active' | 'workingSet' | 'frequent' | 'rare' | 'restricted' | 'unknown';
+    isBackgroundRestricted: boolean; // Whether the user restricted background work. Always false before Android 9.
+    isIgnoringBatteryOptimizations: boolean; // Whether the app is exempt from battery optimizations.
+    dataSaver: 'enabled' | 'disabled' | 'allowlisted'; // Data saver status for the app.
+    isDeviceIdleMode: boolean; // Whether the device is in doze mode.
+    isDeviceLightIdleMode: boolean; // Whether the device is in light doze mode. Always false before Android 13.
+};
+
+/**
+ * StrictMode violation.
+ */
+export type DiagnosticStrictModeViolation = {
+    time: number; // When it was detected, in milliseconds.
+    elapsed: number; // When it was detected, in milliseconds of elapsed realtime.
+    policy: 'thread' | 'vm'; // Policy that detected it.
+    type: string; // Violation type, e.g. DiskReadViolation.
+    message: string | null; // Violation message.
+    stack: string[]; // Top frames of the stack trace.
+};
+
+/**
+ * StrictMode violations detected.
+ */
+export type DiagnosticStrictModeReport = {
+    isEnabled: boolean; // Whether the monitor is enabled.
+    droppedViolations: number; // Number of older violations overwritten.
+    violations: DiagnosticStrictModeViolation[]; // Violations, oldest first. Always empty before Android 9.
+};
+
+/**
+ * Network traffic counters of the app. Counters not supported by the device are -1.
+ */
+export type DiagnosticTrafficStats = {
+    time: number; // When the counters were read, in milliseconds of elapsed realtime. Duration for checkpoints.
+    rxBytes: number; // Bytes received.
+    txBytes: number; // Bytes transmitted.
+    rxPackets: number; // Packets received.
+    txPackets: number; // Packets transmitted.
+};
+
+/**
+ * Resources used by the app process over time. Each value has one entry per sample, in the same order as time.
+ */
+export type DiagnosticResourceSeries = {
+    isStarted: boolean; // Whether the sampler is running.
+    interval: number; // Time between samples, in milliseconds.
+    capacity: number; // Maximum number of samples kept.
+    droppedSamples: number; // Number of older samples overwritten.
+    time: number[]; // When each sample was taken, in milliseconds of elapsed realtime.
+    javaHeapUsed: number[]; // Java heap used, in bytes.
+    javaHeapMax: number[]; // Java heap limit, in bytes.
+    nativeHeapAllocated: number[]; // Native heap allocated, in bytes.
+    cpuTime: number[]; // CPU time used by the process since it started, in milliseconds.
+    threads: number[]; // Number of threads, -1 if unknown.
+    fileDescriptors: number[]; // Number of open file descriptors, -1 if unknown.
+};
+
+/**
+ * Storage capacity of a volume.
+ */
+export type DiagnosticStorageCapacity = {
+    freeBytes: number;
+    totalBytes: number;
+};
+
+/**
+ * Space used by a directory, including its subdirectories.
+ */
+export type DiagnosticDirectoryUsage = {
+    bytes: number;
+    files: number;
+};
+
+/**
+ * Storage capacity of the device and space used by the app.
+ */
+export type DiagnosticStorageProfile = {
+    internal: DiagnosticStorageCapacity;
+    external?: DiagnosticStorageCapacity; // Not set if external storage isn't mounted.
+    allocatableBytes?: number; // Bytes that can be allocated, including cached data the system can clear. Android 8+.
+    usage: {
+        files: DiagnosticDirectoryUsage;
+        cache: DiagnosticDirectoryUsage;
+        externalFiles?: DiagnosticDirectoryUsage;
+        externalCache?: DiagnosticDirectoryUsage;
+    };
+};
+
+/**
+ * Flight recorder log of a session. Only the last 1024 records are kept.
+ */
+export type DiagnosticSessionLog = {
+    sessionStart: number; // Timestamp in milliseconds.
+    totalRecords: number; // Number of records written during the session, including overwritten ones.
+    records: {
+        time: number; // Timestamp in milliseconds.
+        elapsed: number; // Milliseconds of elapsed realtime.
+        type: 'action' | 'error' | 'state' | 'event';
+        label: string; // Plugin and action, state or event name, truncated to 32 characters.
+        value: number; // Duration in milliseconds for actions and errors, new value for states.
+    }[];
+};
+
+/**
+ * Startup timeline returned by the native side. Times are in milliseconds of elapsed realtime.
+ */
+type DiagnosticNativeStartupTimeline = {
+    processStart: number;
+    now: number;
+    marks: { name: string; time: number }[]; // Time since process start.
+    softRestart?: DiagnosticSoftRestart;
+};
+
+/**
+ * Last soft restart. Times are in milliseconds since process start.
+ */
+export type DiagnosticSoftRestart = {
+    start: number;
+    end?: number; // Not set if the page hasn't finished loading.
+    duration?: number; // Time until the page finished loading, in milliseconds.
+};
+
+/**
+ * Startup step.
+ */
+export type DiagnosticStartupMark = {
+    name: string;
+    time: number; // Milliseconds since process start.
+    source: 'native' | 'js';
+};
+
+/**
+ * Startup timeline.
+ */
+export type DiagnosticStartupTimeline = {
+    processStart: number; // Process start, in milliseconds of elapsed realtime.
+    marks: DiagnosticStartupMark[]; // Steps, sorted by time.
+    softRestart?: DiagnosticSoftRestart; // Last soft restart, if any.
+};
+
+const noop = () => {
+    // Nothing to do.
+};
+
 const permission = {
     recordAudio: 'RECORD_AUDIO',
 } as const;
@@ -0,0 +1,138 @@
+// (C) Copyright 2015 Moodle Pty Ltd.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+/**
+ * Allows checking and controlling how the app is rendered in the display.
+ */
+export class Display {
+
+    /**
+     * Android only. Get the display modes supported by the display, the current one and the one preferred by the app.
+     *
+     * @returns Display modes, null in other platforms.
+     */
+    getDisplayModes(): Promise<DisplayModes | null> {
+        return this.execAndroid<DisplayModes>('getDisplayModes');
+    }
+
+    /**
+     * Android only. Set the preferred refresh rate of the app. Only rates with the current resolution are used.
+     * Use a high rate while the user is interacting with the page and a low rate when it's idle to save battery.
+     * The preference is discarded when the WebView navigates or refreshes, and the system may ignore it.
+     *
+     * @param rate 'high' or 'low' for the highest or lowest supported rate, 'default' to let the system decide, or a
+     * rate in Hz to use the closest supported rate.
+     * @returns Mode that will be used, undefined for 'default'. Null in other platforms.
+     */
+    setRefreshRate(rate: 'high' | 'low' | 'default' | number): Promise<DisplayMode | undefined | null> {
+        return this.execAndroid<DisplayMode | undefined>('setRefreshRate', [rate]);
+    }
+
+    /**
+     * Android only. Start collecting the duration of the frames rendered by the app, grouped by screen.
+     * Collection is cheap enough to be left on in production, e.g. for a sample of users.
+     */
+    async startFrameMetrics(): Promise<void> {
+        await this.execAndroid('startFrameMetrics');
+    }
+
+    /**
+     * Android only. Stop collecting frame durations. Stats collected so far are kept.
+     */
+    async stopFrameMetrics(): Promise<void> {
+        await this.execAndroid('stopFrameMetrics');
+    }
+
+    /**
+     * Android only. Set the screen the next frames belong to. It's reset when the WebView navigates or refreshes.
+     *
+     * @param screen Screen tag, e.g. the current route.
+     */
+    async setScreen(screen: string): Promise<void> {
+        await this.execAndroid('setScreen', [screen]);
+    }
+
+    /**
+     * Android only. Get the frame stats of each screen.
+     *
+     * @param reset Whether to discard the stats once returned.
+     * @returns Frame stats, null in other platforms.
+     */
+    getFrameMetrics(reset = false): Promise<DisplayFrameMetrics | null> {
+        return this.execAndroid<DisplayFrameMetrics>('getFrameMetrics', [reset]);
+    }
+
+    /**
+     * Call an Android only action of the native plugin.
+     *
+     * @param action Action to call.
+     * @param args Arguments of the action.
+     * @returns Result of the action, null in other platforms.
+     */
+    protected execAndroid<T>(action: string, args: unknown[] = []): Promise<T | null> {
+        return new Promise<T | null>((resolve, reject) => {
+            if (cordova.platformId !== 'android') {
+                resolve(null);
+
+                return;
+            }
+
+            cordova.exec(resolve, reject, 'Display', action, args);
+        });
+    }
+
+}
+
+/**
+ * Display mode.
+ */
+export type DisplayMode = {
+    id: number; // Mode ID.
+    width: number; // Physical width, in pixels.
+    height: number; // Physical height, in pixels.
+    refreshRate: number; // Refresh rate, in Hz.
+};
+
+/**
+ * Display modes of the display the app is shown in.
+ */
+export type DisplayModes = {
+    currentMode: DisplayMode; // Mode currently used by the display.
+    supportedModes: DisplayMode[]; // Modes supported by the display.
+    preferredModeId: number; // Mode preferred by the app, 0 if none.
+    preferredRefreshRate: number; // Refresh rate preferred by the app, 0 if none.
+};
+
+/**
+ * Frame stats of a screen.
+ */
+export type DisplayScreenFrameStats = {
+    frames: number; // Number of frames rendered, excluding the first frame of the window.
+    slowFrames: number; // Frames that missed their deadline, or took more than 16ms before Android 12.
+    frozenFrames: number; // Frames that took more than 700ms.
+    droppedFrames: number; // Frames whose metrics were dropped because the collector was busy.
+    meanDurationMs: number; // Mean frame duration.
+    maxDurationMs: number; // Longest frame duration.
+    histogram: number[]; // Number of frames in each bucket of histogramBounds, plus one for longer frames.
+};
+
+/**
+ * Frame stats collected.
+ */
+export type DisplayFrameMetrics = {
+    isCollecting: boolean; // Whether frames are being collected.
+    currentScreen: string; // Screen the current frames belong to.
+    histogramBounds: number[]; // Upper bounds of the histogram buckets, in milliseconds.
+    screens: Record<string, DisplayScreenFrameStats>; // Stats by screen tag.
+};
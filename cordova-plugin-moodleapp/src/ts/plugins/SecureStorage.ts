@@ -71,6 +71,43 @@ export class SecureStorage {
         });
     }
 
+    /**
+     * Set a value only if its current value is the expected one. The check and the write are done atomically.
+     *
+     * @param name Name of the value.
+     * @param expected Expected current value, null if the value shouldn't exist.
+     * @param value New value, null to delete it.
+     * @param collection The collection where the value is stored.
+     * @returns Whether the current value matched and it was replaced.
+     */
+    async compareAndSet(name: string, expected: string | null, value: string | null, collection: string): Promise<boolean> {
+        return new Promise((resolve, reject) => {
+            cordova.exec(resolve, reject, 'SecureStorage', 'compareAndSet', [name, expected, value, collection]);
+        });
+    }
+
+    /**
+     * Store and delete several values atomically, either all the changes are applied or none of them.
+     *
+     * @param data Object with values to store, in format name -> value. Null or undefined valid values will be ignored.
+     * @param names Names to delete. If a name is also in data, it will be stored.
+     * @param collection The collection where to apply the changes.
+     */
+    async update(data: Record<string, string>, names: string[], collection: string): Promise<void> {
+        for (const name in data) {
+            const value = data[name];
+            if (value === undefined || value === null) {
+                delete data[name];
+            } else if (typeof value !== 'string') {
+                throw new Error(`SecureStorage: Invalid value for ${name}. Expected string, received ${typeof value}`);
+            }
+        }
+
+        await new Promise((resolve, reject) => {
+            cordova.exec(resolve, reject, 'SecureStorage', 'update', [data, names, collection]);
+        });
+    }
+
     /**
      * Delete all values for a certain collection.
      *
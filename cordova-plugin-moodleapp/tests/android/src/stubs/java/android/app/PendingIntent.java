@@ -0,0 +1,32 @@
+// (C) Copyright 2015 Moodle Pty Ltd.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package android.app;
+
+import android.content.Context;
+import android.content.Intent;
+
+/**
+ * Stub of the Android API used by the plugins, only for the JVM stress tests.
+ */
+public final class PendingIntent {
+
+    public static final int FLAG_CANCEL_CURRENT = 1 << 28;
+    public static final int FLAG_IMMUTABLE = 1 << 26;
+
+    public static PendingIntent getActivity(Context context, int requestCode, Intent intent, int flags) {
+        return new PendingIntent();
+    }
+
+}
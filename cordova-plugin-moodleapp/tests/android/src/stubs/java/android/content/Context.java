@@ -0,0 +1,64 @@
+// (C) Copyright 2015 Moodle Pty Ltd.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package android.content;
+
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import java.io.File;
+
+/**
+ * Stub of the Android API used by the plugins, only for the JVM stress tests.
+ */
+public abstract class Context {
+
+    public static final int MODE_PRIVATE = 0;
+    public static final String ACTIVITY_SERVICE = "activity";
+    public static final String BATTERY_SERVICE = "batterymanager";
+    public static final String CONNECTIVITY_SERVICE = "connectivity";
+    public static final String POWER_SERVICE = "power";
+    public static final String STORAGE_SERVICE = "storage";
+    public static final String TELEPHONY_SERVICE = "phone";
+    public static final String USAGE_STATS_SERVICE = "usagestats";
+    public static final String ALARM_SERVICE = "alarm";
+
+    public abstract Context getApplicationContext();
+
+    public abstract SharedPreferences getSharedPreferences(String name, int mode);
+
+    public abstract Object getSystemService(String name);
+
+    public abstract PackageManager getPackageManager();
+
+    public abstract String getPackageName();
+
+    public abstract ApplicationInfo getApplicationInfo();
+
+    public abstract File getFilesDir();
+
+    public abstract File getCacheDir();
+
+    public abstract File getExternalFilesDir(String type);
+
+    public abstract File getExternalCacheDir();
+
+    public abstract ContentResolver getContentResolver();
+
+    public abstract Intent registerReceiver(BroadcastReceiver receiver, IntentFilter filter);
+
+    public abstract void unregisterReceiver(BroadcastReceiver receiver);
+
+    public abstract void startActivity(Intent intent);
+
+}
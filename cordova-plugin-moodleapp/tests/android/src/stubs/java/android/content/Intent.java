@@ -0,0 +1,57 @@
+// (C) Copyright 2015 Moodle Pty Ltd.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package android.content;
+
+import android.net.Uri;
+
+/**
+ * Stub of the Android API used by the plugins, only for the JVM stress tests.
+ */
+public class Intent {
+
+    public static final String ACTION_BATTERY_CHANGED = "android.intent.action.BATTERY_CHANGED";
+    public static final int FLAG_ACTIVITY_NEW_TASK = 0x10000000;
+    public static final int FLAG_ACTIVITY_CLEAR_TASK = 0x00008000;
+
+    private String action;
+
+    public Intent() {
+    }
+
+    public Intent(String action) {
+        this.action = action;
+    }
+
+    public String getAction() {
+        return action;
+    }
+
+    public Intent setData(Uri data) {
+        return this;
+    }
+
+    public Intent addFlags(int flags) {
+        return this;
+    }
+
+    public int getIntExtra(String name, int defaultValue) {
+        return defaultValue;
+    }
+
+    public boolean getBooleanExtra(String name, boolean defaultValue) {
+        return defaultValue;
+    }
+
+}
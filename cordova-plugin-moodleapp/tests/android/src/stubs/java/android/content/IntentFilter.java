@@ -0,0 +1,31 @@
+// (C) Copyright 2015 Moodle Pty Ltd.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package android.content;
+
+/**
+ * Stub of the Android API used by the plugins, only for the JVM stress tests.
+ */
+public class IntentFilter {
+
+    public IntentFilter() {
+    }
+
+    public IntentFilter(String action) {
+    }
+
+    public void addAction(String action) {
+    }
+
+}
@@ -0,0 +1,58 @@
+// (C) Copyright 2015 Moodle Pty Ltd.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package android.net;
+
+/**
+ * Stub of the Android API used by the plugins, only for the JVM stress tests.
+ */
+public class ConnectivityManager {
+
+    public static final String ACTION_RESTRICT_BACKGROUND_CHANGED = "android.net.conn.RESTRICT_BACKGROUND_CHANGED";
+    public static final int RESTRICT_BACKGROUND_STATUS_DISABLED = 1;
+    public static final int RESTRICT_BACKGROUND_STATUS_WHITELISTED = 2;
+    public static final int RESTRICT_BACKGROUND_STATUS_ENABLED = 3;
+
+    public static class NetworkCallback {
+
+        public void onAvailable(Network network) {
+        }
+
+        public void onLost(Network network) {
+        }
+
+        public void onCapabilitiesChanged(Network network, NetworkCapabilities networkCapabilities) {
+        }
+
+    }
+
+    public Network getActiveNetwork() {
+        return null;
+    }
+
+    public NetworkCapabilities getNetworkCapabilities(Network network) {
+        return null;
+    }
+
+    public int getRestrictBackgroundStatus() {
+        return RESTRICT_BACKGROUND_STATUS_DISABLED;
+    }
+
+    public void registerDefaultNetworkCallback(NetworkCallback networkCallback) {
+    }
+
+    public void unregisterNetworkCallback(NetworkCallback networkCallback) {
+    }
+
+}
@@ -0,0 +1,47 @@
+// (C) Copyright 2015 Moodle Pty Ltd.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package android.net;
+
+/**
+ * Stub of the Android API used by the plugins, only for the JVM stress tests.
+ */
+public final class NetworkCapabilities {
+
+    public static final int TRANSPORT_CELLULAR = 0;
+    public static final int TRANSPORT_WIFI = 1;
+    public static final int TRANSPORT_BLUETOOTH = 2;
+    public static final int TRANSPORT_ETHERNET = 3;
+    public static final int TRANSPORT_VPN = 4;
+    public static final int NET_CAPABILITY_NOT_METERED = 11;
+    public static final int NET_CAPABILITY_VALIDATED = 16;
+    public static final int NET_CAPABILITY_NOT_ROAMING = 18;
+
+    public boolean hasTransport(int transportType) {
+        return false;
+    }
+
+    public boolean hasCapability(int capability) {
+        return false;
+    }
+
+    public int getLinkDownstreamBandwidthKbps() {
+        return 0;
+    }
+
+    public int getLinkUpstreamBandwidthKbps() {
+        return 0;
+    }
+
+}
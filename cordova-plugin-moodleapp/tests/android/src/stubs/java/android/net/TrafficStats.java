@@ -0,0 +1,50 @@
+// (C) Copyright 2015 Moodle Pty Ltd.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package android.net;
+
+/**
+ * Stub of the Android API used by the plugins, only for the JVM stress tests.
+ */
+public class TrafficStats {
+
+    private static final ThreadLocal<Integer> tags = new ThreadLocal<Integer>();
+
+    public static int getThreadStatsTag() {
+        Integer tag = tags.get();
+
+        return tag != null ? tag : 0;
+    }
+
+    public static void setThreadStatsTag(int tag) {
+        tags.set(tag);
+    }
+
+    public static long getUidRxBytes(int uid) {
+        return 0;
+    }
+
+    public static long getUidTxBytes(int uid) {
+        return 0;
+    }
+
+    public static long getUidRxPackets(int uid) {
+        return 0;
+    }
+
+    public static long getUidTxPackets(int uid) {
+        return 0;
+    }
+
+}
@@ -0,0 +1,37 @@
+// (C) Copyright 2015 Moodle Pty Ltd.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package android.os;
+
+/**
+ * Stub of the Android API used by the plugins, only for the JVM stress tests.
+ */
+public class BatteryManager {
+
+    public static final String EXTRA_STATUS = "status";
+    public static final String EXTRA_LEVEL = "level";
+    public static final String EXTRA_SCALE = "scale";
+    public static final String EXTRA_PLUGGED = "plugged";
+    public static final int BATTERY_STATUS_CHARGING = 2;
+    public static final int BATTERY_STATUS_FULL = 5;
+    public static final int BATTERY_PLUGGED_AC = 1;
+    public static final int BATTERY_PLUGGED_USB = 2;
+    public static final int BATTERY_PLUGGED_WIRELESS = 4;
+    public static final int BATTERY_PROPERTY_CAPACITY = 4;
+
+    public int getIntProperty(int id) {
+        return 100;
+    }
+
+}
@@ -0,0 +1,41 @@
+// (C) Copyright 2015 Moodle Pty Ltd.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package android.os;
+
+/**
+ * Stub of the Android API used by the plugins, only for the JVM stress tests.
+ */
+public class Build {
+
+    public static final String TAGS = "release-keys";
+    public static final String CPU_ABI = "x86_64";
+    public static final String[] SUPPORTED_ABIS = { "x86_64" };
+
+    public static class VERSION {
+
+        public static final int SDK_INT = 34;
+        public static final String RELEASE = "14";
+        public static final int MEDIA_PERFORMANCE_CLASS = 0;
+
+    }
+
+    public static class VERSION_CODES {
+
+        public static final int LOLLIPOP = 21;
+        public static final int UPSIDE_DOWN_CAKE = 34;
+
+    }
+
+}
@@ -0,0 +1,62 @@
+// (C) Copyright 2015 Moodle Pty Ltd.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package android.os;
+
+/**
+ * Stub of the Android API used by the plugins, only for the JVM stress tests.
+ */
+public class PowerManager {
+
+    public static final String ACTION_POWER_SAVE_MODE_CHANGED = "android.os.action.POWER_SAVE_MODE_CHANGED";
+    public static final String ACTION_DEVICE_IDLE_MODE_CHANGED = "android.os.action.DEVICE_IDLE_MODE_CHANGED";
+    public static final String ACTION_DEVICE_LIGHT_IDLE_MODE_CHANGED = "android.os.action.LIGHT_DEVICE_IDLE_MODE_CHANGED";
+
+    public interface OnThermalStatusChangedListener {
+
+        void onThermalStatusChanged(int status);
+
+    }
+
+    public boolean isPowerSaveMode() {
+        return false;
+    }
+
+    public boolean isDeviceIdleMode() {
+        return false;
+    }
+
+    public boolean isDeviceLightIdleMode() {
+        return false;
+    }
+
+    public boolean isIgnoringBatteryOptimizations(String packageName) {
+        return false;
+    }
+
+    public int getCurrentThermalStatus() {
+        return 0;
+    }
+
+    public float getThermalHeadroom(int forecastSeconds) {
+        return Float.NaN;
+    }
+
+    public void addThermalStatusListener(OnThermalStatusChangedListener listener) {
+    }
+
+    public void removeThermalStatusListener(OnThermalStatusChangedListener listener) {
+    }
+
+}
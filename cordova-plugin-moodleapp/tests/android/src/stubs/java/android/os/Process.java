@@ -0,0 +1,47 @@
+// (C) Copyright 2015 Moodle Pty Ltd.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package android.os;
+
+/**
+ * Stub of the Android API used by the plugins, only for the JVM stress tests.
+ */
+public class Process {
+
+    public static final int THREAD_PRIORITY_LOWEST = 19;
+
+    public static int myPid() {
+        return 1;
+    }
+
+    public static int myUid() {
+        return 10000;
+    }
+
+    public static long getElapsedCpuTime() {
+        return 0;
+    }
+
+    public static long getStartElapsedRealtime() {
+        return 0;
+    }
+
+    public static void setThreadPriority(int priority) {
+    }
+
+    public static void killProcess(int pid) {
+        throw new UnsupportedOperationException();
+    }
+
+}
@@ -0,0 +1,135 @@
+// (C) Copyright 2015 Moodle Pty Ltd.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package android.os;
+
+import android.os.strictmode.Violation;
+import java.util.concurrent.Executor;
+
+/**
+ * Stub of the Android API used by the plugins, only for the JVM stress tests.
+ */
+public final class StrictMode {
+
+    public interface OnThreadViolationListener {
+
+        void onThreadViolation(Violation violation);
+
+    }
+
+    public interface OnVmViolationListener {
+
+        void onVmViolation(Violation violation);
+
+    }
+
+    public static final class ThreadPolicy {
+
+        public static final class Builder {
+
+            public Builder detectDiskReads() {
+                return this;
+            }
+
+            public Builder detectDiskWrites() {
+                return this;
+            }
+
+            public Builder detectNetwork() {
+                return this;
+            }
+
+            public Builder detectCustomSlowCalls() {
+                return this;
+            }
+
+            public Builder detectResourceMismatches() {
+                return this;
+            }
+
+            public Builder detectUnbufferedIo() {
+                return this;
+            }
+
+            public Builder penaltyLog() {
+                return this;
+            }
+
+            public Builder penaltyListener(Executor executor, OnThreadViolationListener listener) {
+                return this;
+            }
+
+            public ThreadPolicy build() {
+                return new ThreadPolicy();
+            }
+
+        }
+
+    }
+
+    public static final class VmPolicy {
+
+        public static final class Builder {
+
+            public Builder detectLeakedClosableObjects() {
+                return this;
+            }
+
+            public Builder detectLeakedSqlLiteObjects() {
+                return this;
+            }
+
+            public Builder detectLeakedRegistrationObjects() {
+                return this;
+            }
+
+            public Builder detectActivityLeaks() {
+                return this;
+            }
+
+            public Builder detectFileUriExposure() {
+                return this;
+            }
+
+            public Builder detectCleartextNetwork() {
+                return this;
+            }
+
+            public Builder detectContentUriWithoutPermission() {
+                return this;
+            }
+
+            public Builder penaltyLog() {
+                return this;
+            }
+
+            public Builder penaltyListener(Executor executor, OnVmViolationListener listener) {
+                return this;
+            }
+
+            public VmPolicy build() {
+                return new VmPolicy();
+            }
+
+        }
+
+    }
+
+    public static void setThreadPolicy(ThreadPolicy policy) {
+    }
+
+    public static void setVmPolicy(VmPolicy policy) {
+    }
+
+}
@@ -0,0 +1,50 @@
+// (C) Copyright 2015 Moodle Pty Ltd.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package android.provider;
+
+import android.content.ContentResolver;
+
+/**
+ * Stub of the Android API used by the plugins, only for the JVM stress tests.
+ */
+public final class Settings {
+
+    public static final String ACTION_APPLICATION_DETAILS_SETTINGS = "android.settings.APPLICATION_DETAILS_SETTINGS";
+    public static final String ACTION_DATA_ROAMING_SETTINGS = "android.settings.DATA_ROAMING_SETTINGS";
+    public static final String ACTION_WIRELESS_SETTINGS = "android.settings.WIRELESS_SETTINGS";
+
+    public static final class Global {
+
+        public static final String ADB_ENABLED = "adb_enabled";
+        public static final String AIRPLANE_MODE_ON = "airplane_mode_on";
+        public static final String DATA_ROAMING = "data_roaming";
+
+        public static int getInt(ContentResolver resolver, String name, int def) {
+            return def;
+        }
+
+    }
+
+    public static final class Secure {
+
+        public static final String ADB_ENABLED = "adb_enabled";
+
+        public static int getInt(ContentResolver resolver, String name, int def) {
+            return def;
+        }
+
+    }
+
+}
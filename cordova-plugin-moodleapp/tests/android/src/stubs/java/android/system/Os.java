@@ -0,0 +1,33 @@
+// (C) Copyright 2015 Moodle Pty Ltd.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package android.system;
+
+import java.io.File;
+
+/**
+ * Stub of the Android API used by the plugins, only for the JVM stress tests.
+ */
+public final class Os {
+
+    public static StructStat lstat(String path) throws ErrnoException {
+        File file = new File(path);
+        if (!file.exists()) {
+            throw new ErrnoException("lstat", 2);
+        }
+
+        return new StructStat(file.isDirectory() ? OsConstants.S_IFDIR : 0100000, file.length());
+    }
+
+}
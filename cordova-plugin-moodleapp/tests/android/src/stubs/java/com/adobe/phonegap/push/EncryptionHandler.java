@@ -0,0 +1,39 @@
+// (C) Copyright 2015 Moodle Pty Ltd.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.adobe.phonegap.push;
+
+import android.content.Context;
+
+/**
+ * Stub of the push plugin encryption used by SecureStorage, only for the JVM stress tests. It reverses the values, so
+ * reading a value that wasn't decrypted returns the wrong value.
+ */
+public class EncryptionHandler {
+
+    public static final Companion Companion = new Companion();
+
+    public static final class Companion {
+
+        public String encrypt(Context context, String value) {
+            return new StringBuilder(value).reverse().toString();
+        }
+
+        public String decrypt(Context context, String value) {
+            return new StringBuilder(value).reverse().toString();
+        }
+
+    }
+
+}
@@ -0,0 +1,71 @@
+// (C) Copyright 2015 Moodle Pty Ltd.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.android.installreferrer.api;
+
+import android.content.Context;
+import android.os.RemoteException;
+
+/**
+ * Stub of the Play Install Referrer library, only for the JVM stress tests. Clients are created by a factory set by
+ * the tests.
+ */
+public abstract class InstallReferrerClient {
+
+    /**
+     * Creates the clients built by newBuilder, set by the tests.
+     */
+    public interface Factory {
+
+        InstallReferrerClient create(Context context);
+
+    }
+
+    public static volatile Factory factory;
+
+    public static final class InstallReferrerResponse {
+
+        public static final int SERVICE_DISCONNECTED = -1;
+        public static final int OK = 0;
+        public static final int SERVICE_UNAVAILABLE = 1;
+        public static final int FEATURE_NOT_SUPPORTED = 2;
+        public static final int DEVELOPER_ERROR = 3;
+
+    }
+
+    public static final class Builder {
+
+        private final Context context;
+
+        Builder(Context context) {
+            this.context = context;
+        }
+
+        public InstallReferrerClient build() {
+            return factory.create(context);
+        }
+
+    }
+
+    public static Builder newBuilder(Context context) {
+        return new Builder(context);
+    }
+
+    public abstract void startConnection(InstallReferrerStateListener listener);
+
+    public abstract void endConnection();
+
+    public abstract ReferrerDetails getInstallReferrer() throws RemoteException;
+
+}
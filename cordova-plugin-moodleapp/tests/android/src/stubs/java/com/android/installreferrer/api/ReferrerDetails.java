@@ -0,0 +1,44 @@
+// (C) Copyright 2015 Moodle Pty Ltd.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.android.installreferrer.api;
+
+/**
+ * Stub of the Play Install Referrer library, only for the JVM stress tests.
+ */
+public class ReferrerDetails {
+
+    private final String installReferrer;
+
+    public ReferrerDetails(String installReferrer) {
+        this.installReferrer = installReferrer;
+    }
+
+    public String getInstallReferrer() {
+        return installReferrer;
+    }
+
+    public long getReferrerClickTimestampSeconds() {
+        return 0;
+    }
+
+    public long getInstallBeginTimestampSeconds() {
+        return 0;
+    }
+
+    public boolean getGooglePlayInstantParam() {
+        return false;
+    }
+
+}
@@ -0,0 +1,39 @@
+// (C) Copyright 2015 Moodle Pty Ltd.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package org.apache.cordova;
+
+import android.app.Activity;
+import android.content.Context;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Stub of the Cordova API used by the plugins, only for the JVM stress tests.
+ */
+public interface CordovaInterface {
+
+    Activity getActivity();
+
+    Context getContext();
+
+    ExecutorService getThreadPool();
+
+    Object onMessage(String id, Object data);
+
+    void requestPermissions(CordovaPlugin plugin, int requestCode, String[] permissions);
+
+    boolean hasPermission(String permission);
+
+}
@@ -0,0 +1,65 @@
+// (C) Copyright 2015 Moodle Pty Ltd.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package org.apache.cordova;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+
+/**
+ * Stub of the Cordova plugin base class, only for the JVM stress tests.
+ */
+public class CordovaPlugin {
+
+    public CordovaWebView webView;
+    public CordovaInterface cordova;
+    protected CordovaPreferences preferences;
+
+    public final void privateInitialize(String serviceName, CordovaInterface cordova, CordovaWebView webView,
+            CordovaPreferences preferences) {
+        this.cordova = cordova;
+        this.webView = webView;
+        this.preferences = preferences;
+        initialize(cordova, webView);
+        pluginInitialize();
+    }
+
+    public void initialize(CordovaInterface cordova, CordovaWebView webView) {
+    }
+
+    protected void pluginInitialize() {
+    }
+
+    public boolean execute(String action, JSONArray args, CallbackContext callbackContext) throws JSONException {
+        return false;
+    }
+
+    public Object onMessage(String id, Object data) {
+        return null;
+    }
+
+    public void onResume(boolean multitasking) {
+    }
+
+    public void onReset() {
+    }
+
+    public void onDestroy() {
+    }
+
+    public void onRequestPermissionResult(int requestCode, String[] permissions, int[] grantResults)
+            throws JSONException {
+    }
+
+}
@@ -0,0 +1,43 @@
+// (C) Copyright 2015 Moodle Pty Ltd.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package org.apache.cordova;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Stub of the Cordova preferences, only for the JVM stress tests.
+ */
+public class CordovaPreferences {
+
+    private final Map<String, String> preferences = new HashMap<String, String>();
+
+    public void set(String name, String value) {
+        preferences.put(name.toLowerCase(), value);
+    }
+
+    public boolean getBoolean(String name, boolean defaultValue) {
+        String value = preferences.get(name.toLowerCase());
+
+        return value != null ? Boolean.parseBoolean(value) : defaultValue;
+    }
+
+    public String getString(String name, String defaultValue) {
+        String value = preferences.get(name.toLowerCase());
+
+        return value != null ? value : defaultValue;
+    }
+
+}
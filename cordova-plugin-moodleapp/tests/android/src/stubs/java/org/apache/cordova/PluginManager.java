@@ -0,0 +1,35 @@
+// (C) Copyright 2015 Moodle Pty Ltd.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package org.apache.cordova;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Stub of the Cordova plugin manager, only for the JVM stress tests. Plugins are registered by the tests.
+ */
+public class PluginManager {
+
+    private final Map<String, CordovaPlugin> plugins = new HashMap<String, CordovaPlugin>();
+
+    public void addPlugin(String service, CordovaPlugin plugin) {
+        plugins.put(service, plugin);
+    }
+
+    public CordovaPlugin getPlugin(String service) {
+        return plugins.get(service);
+    }
+
+}
@@ -0,0 +1,113 @@
+// (C) Copyright 2015 Moodle Pty Ltd.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package org.apache.cordova;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Stub of the Cordova plugin result, only for the JVM stress tests. It keeps the same message types.
+ */
+public class PluginResult {
+
+    public static final int MESSAGE_TYPE_STRING = 1;
+    public static final int MESSAGE_TYPE_JSON = 2;
+    public static final int MESSAGE_TYPE_NUMBER = 3;
+    public static final int MESSAGE_TYPE_BOOLEAN = 4;
+    public static final int MESSAGE_TYPE_NULL = 5;
+
+    public enum Status {
+        NO_RESULT,
+        OK,
+        CLASS_NOT_FOUND_EXCEPTION,
+        ILLEGAL_ACCESS_EXCEPTION,
+        INSTANTIATION_EXCEPTION,
+        MALFORMED_URL_EXCEPTION,
+        IO_EXCEPTION,
+        INVALID_ACTION,
+        JSON_EXCEPTION,
+        ERROR
+    }
+
+    private final int status;
+    private final int messageType;
+    private final String encodedMessage;
+    private final String strMessage;
+    private boolean keepCallback = false;
+
+    public PluginResult(Status status) {
+        this(status, MESSAGE_TYPE_NULL, null, null);
+    }
+
+    public PluginResult(Status status, String message) {
+        this(status, message == null ? MESSAGE_TYPE_NULL : MESSAGE_TYPE_STRING, null, message);
+    }
+
+    public PluginResult(Status status, JSONArray message) {
+        this(status, MESSAGE_TYPE_JSON, message.toString(), null);
+    }
+
+    public PluginResult(Status status, JSONObject message) {
+        this(status, MESSAGE_TYPE_JSON, message.toString(), null);
+    }
+
+    public PluginResult(Status status, int i) {
+        this(status, MESSAGE_TYPE_NUMBER, String.valueOf(i), null);
+    }
+
+    public PluginResult(Status status, float f) {
+        this(status, MESSAGE_TYPE_NUMBER, String.valueOf(f), null);
+    }
+
+    public PluginResult(Status status, boolean b) {
+        this(status, MESSAGE_TYPE_BOOLEAN, Boolean.toString(b), null);
+    }
+
+    private PluginResult(Status status, int messageType, String encodedMessage, String strMessage) {
+        this.status = status.ordinal();
+        this.messageType = messageType;
+        this.encodedMessage = encodedMessage;
+        this.strMessage = strMessage;
+    }
+
+    public void setKeepCallback(boolean keepCallback) {
+        this.keepCallback = keepCallback;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public int getMessageType() {
+        return messageType;
+    }
+
+    public String getMessage() {
+        if (messageType == MESSAGE_TYPE_STRING) {
+            return JSONObject.quote(strMessage);
+        }
+
+        return messageType == MESSAGE_TYPE_NULL ? "null" : encodedMessage;
+    }
+
+    public String getStrMessage() {
+        return strMessage;
+    }
+
+    public boolean getKeepCallback() {
+        return keepCallback;
+    }
+
+}
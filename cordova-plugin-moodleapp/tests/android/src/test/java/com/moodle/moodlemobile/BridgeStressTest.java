@@ -0,0 +1,187 @@
+// (C) Copyright 2015 Moodle Pty Ltd.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.moodle.moodlemobile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Stress tests of Bridge.batch: every batch must be answered once with a result per entry, entries of a plugin that
+ * modifies data must run in order, and actions that can't be batched must be rejected.
+ */
+public class BridgeStressTest {
+
+    private static final int THREADS = 8;
+    private static final int ITERATIONS = 100;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private FakeCordova cordova;
+    private Bridge bridge;
+
+    @Before
+    public void setUp() throws Exception {
+        cordova = new FakeCordova(folder.getRoot());
+        cordova.initializePlugin("SecureStorage", new SecureStorage());
+        cordova.initializePlugin("Diagnostic", new Diagnostic());
+        bridge = cordova.initializePlugin("Bridge", new Bridge());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        cordova.shutdown();
+    }
+
+    @Test
+    public void concurrentBatchesAreAnsweredOnce() throws Exception {
+        final ConcurrentLinkedQueue<CallbackContext> callbackContexts = new ConcurrentLinkedQueue<CallbackContext>();
+
+        Stress.run(THREADS, ITERATIONS, new Stress.Actor() {
+            @Override
+            public void act(int thread, int iteration) throws Exception {
+                JSONArray entries = new JSONArray();
+                for (int i = 0; i < 4; i++) {
+                    entries.put(entry("SecureStorage", "get", new JSONArray().put(new JSONArray().put("key" + i)).put("shared")));
+                    entries.put(entry("Diagnostic", "getPermissionAuthorizationStatus", new JSONArray().put("CAMERA")));
+                }
+
+                CallbackContext callbackContext = cordova.getWebView().newCallbackContext();
+                bridge.execute("batch", new JSONArray().put(entries), callbackContext);
+                callbackContexts.add(callbackContext);
+            }
+        });
+
+        assertTrue("Lost batch callbacks", Stress.await(new Stress.Condition() {
+            @Override
+            public boolean isMet() {
+                for (CallbackContext callbackContext : callbackContexts) {
+                    if (!cordova.getWebView().hasResult(callbackContext)) {
+                        return false;
+                    }
+                }
+
+                return true;
+            }
+        }));
+
+        for (CallbackContext callbackContext : callbackContexts) {
+            JSONArray results = getBatchResults(callbackContext);
+            assertEquals(8, results.length());
+            for (int i = 0; i < results.length(); i++) {
+                assertTrue(results.getJSONObject(i).toString(), results.getJSONObject(i).getBoolean("success"));
+            }
+            assertEquals(Diagnostic.STATUS_NOT_REQUESTED, results.getJSONObject(1).getString("result"));
+        }
+    }
+
+    @Test
+    public void writesRunInOrder() throws Exception {
+        Stress.run(THREADS, ITERATIONS, new Stress.Actor() {
+            @Override
+            public void act(int thread, int iteration) throws Exception {
+                String collection = "thread" + thread;
+                String value = String.valueOf(iteration);
+                JSONArray entries = new JSONArray()
+                    .put(entry("SecureStorage", "store", new JSONArray().put(new JSONObject().put("key", value)).put(collection)))
+                    .put(entry("Diagnostic", "getPermissionAuthorizationStatus", new JSONArray().put("CAMERA")))
+                    .put(entry("SecureStorage", "get", new JSONArray().put(new JSONArray().put("key")).put(collection)));
+
+                final CallbackContext callbackContext = cordova.getWebView().newCallbackContext();
+                bridge.execute("batch", new JSONArray().put(entries), callbackContext);
+                assertTrue(Stress.await(new Stress.Condition() {
+                    @Override
+                    public boolean isMet() {
+                        return cordova.getWebView().hasResult(callbackContext);
+                    }
+                }));
+
+                // The get must see the value stored by the previous entry.
+                JSONArray results = getBatchResults(callbackContext);
+                assertEquals(value, results.getJSONObject(2).getJSONObject("result").getString("key"));
+            }
+        });
+    }
+
+    @Test
+    public void rejectsActionsThatCantBeBatched() throws Exception {
+        JSONArray entries = new JSONArray()
+            .put(entry("Diagnostic", "restart", new JSONArray().put("cold")))
+            .put(entry("Diagnostic", "switchToSettings", new JSONArray()))
+            .put(entry("Diagnostic", "watchState", new JSONArray().put("network")))
+            .put(entry("Diagnostic", "requestRuntimePermission", new JSONArray().put("CAMERA")))
+            .put(entry("Unknown", "get", new JSONArray()));
+
+        CallbackContext callbackContext = cordova.getWebView().newCallbackContext();
+        bridge.execute("batch", new JSONArray().put(entries), callbackContext);
+
+        // No entry is run, so the batch is answered synchronously.
+        JSONArray results = getBatchResults(callbackContext);
+        assertEquals(entries.length(), results.length());
+        for (int i = 0; i < results.length(); i++) {
+            assertFalse(results.getJSONObject(i).getBoolean("success"));
+        }
+        assertEquals(0, cordova.getPermissionRequests());
+    }
+
+    @Test
+    public void reportThroughput() throws Exception {
+        final JSONArray entries = new JSONArray();
+        for (int i = 0; i < 4; i++) {
+            entries.put(entry("SecureStorage", "get", new JSONArray().put(new JSONArray().put("key" + i)).put("shared")));
+            entries.put(entry("Diagnostic", "getPermissionAuthorizationStatus", new JSONArray().put("CAMERA")));
+        }
+        final JSONArray args = new JSONArray().put(entries);
+
+        Stress.reportThroughput("batches of 8 reads", new Stress.Actor() {
+            @Override
+            public void act(int thread, int iteration) throws Exception {
+                final CallbackContext callbackContext = new CallbackContext("Throughput", cordova.getWebView());
+                bridge.execute("batch", args, callbackContext);
+                while (!callbackContext.isFinished()) {
+                    Thread.yield();
+                }
+            }
+        });
+        cordova.getWebView().getAllResults().clear();
+    }
+
+    private static JSONObject entry(String plugin, String action, JSONArray args) throws Exception {
+        return new JSONObject().put("plugin", plugin).put("action", action).put("args", args);
+    }
+
+    private JSONArray getBatchResults(CallbackContext callbackContext) throws Exception {
+        List<PluginResult> results = cordova.getWebView().getResults(callbackContext.getCallbackId());
+        assertEquals("Results of a batch", 1, results.size());
+        assertEquals(PluginResult.Status.OK.ordinal(), results.get(0).getStatus());
+
+        return new JSONArray(results.get(0).getMessage());
+    }
+
+}
@@ -0,0 +1,343 @@
+// (C) Copyright 2015 Moodle Pty Ltd.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.moodle.moodlemobile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Stress tests of the request bookkeeping of Diagnostic: concurrent permission requests must each get exactly one
+ * reply with the statuses of their own permissions, and no state must be left behind once they're answered.
+ */
+public class DiagnosticStressTest {
+
+    private static final String[] PERMISSIONS = {
+        "CAMERA", "RECORD_AUDIO", "READ_CONTACTS", "WRITE_CONTACTS", "READ_CALENDAR", "WRITE_CALENDAR", "CALL_PHONE",
+        "SEND_SMS",
+    };
+    private static final int THREADS = 8;
+    private static final int ITERATIONS = 200;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private FakeCordova cordova;
+    private Diagnostic diagnostic;
+
+    @Before
+    public void setUp() throws Exception {
+        cordova = new FakeCordova(folder.getRoot());
+        diagnostic = cordova.initializePlugin("Diagnostic", new Diagnostic());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        cordova.shutdown();
+    }
+
+    @Test
+    public void concurrentPermissionRequestsGetTheirOwnReply() throws Exception {
+        final ConcurrentLinkedQueue<Request> requests = new ConcurrentLinkedQueue<Request>();
+
+        Stress.run(THREADS, ITERATIONS, new Stress.Actor() {
+            @Override
+            public void act(int thread, int iteration) throws Exception {
+                // Each thread asks for different permissions, alternating single and multiple requests.
+                JSONArray permissions = new JSONArray().put(PERMISSIONS[thread % PERMISSIONS.length]);
+                CallbackContext callbackContext = cordova.getWebView().newCallbackContext();
+                if (iteration % 2 == 0) {
+                    diagnostic.execute("requestRuntimePermission", new JSONArray().put(permissions.get(0)), callbackContext);
+                } else {
+                    permissions.put(PERMISSIONS[(thread + 1) % PERMISSIONS.length]);
+                    diagnostic.execute("requestRuntimePermissions", new JSONArray().put(permissions), callbackContext);
+                }
+                requests.add(new Request(permissions, callbackContext));
+            }
+        });
+
+        assertTrue("Lost callbacks", Stress.await(new Stress.Condition() {
+            @Override
+            public boolean isMet() {
+                for (Request request : requests) {
+                    if (!cordova.getWebView().hasResult(request.callbackContext)) {
+                        return false;
+                    }
+                }
+
+                return true;
+            }
+        }));
+
+        Stress.Outcomes outcomes = new Stress.Outcomes();
+        for (Request request : requests) {
+            List<PluginResult> results = cordova.getWebView().getResults(request.callbackContext.getCallbackId());
+            assertEquals("Results of a request", 1, results.size());
+            assertEquals(results.get(0).getMessage(), PluginResult.Status.OK.ordinal(), results.get(0).getStatus());
+
+            // The reply must contain the statuses of the requested permissions, not the ones of another request.
+            JSONObject statuses = new JSONObject(results.get(0).getMessage());
+            Set<String> expected = new HashSet<String>();
+            for (int i = 0; i < request.permissions.length(); i++) {
+                expected.add(request.permissions.getString(i));
+            }
+            assertEquals(expected, statuses.keySet());
+
+            for (String permission : expected) {
+                String status = statuses.getString(permission);
+                if (FakeCordova.DENIED_PERMISSION.equals(Diagnostic.permissionsMap.get(permission))) {
+                    assertNotEquals(Diagnostic.STATUS_GRANTED, status);
+                } else {
+                    assertEquals(permission, Diagnostic.STATUS_GRANTED, status);
+                }
+                outcomes.record(permission + " " + status);
+            }
+        }
+
+        outcomes.print("permission requests");
+        assertEquals(THREADS * ITERATIONS, cordova.getPermissionRequests());
+        assertTrue("Leaked callback contexts", diagnostic.callbackContexts.isEmpty());
+        assertTrue("Leaked permission statuses", diagnostic.permissionStatuses.isEmpty());
+    }
+
+    @Test
+    public void statusesAreNotStaleAfterResume() throws Exception {
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final JSONArray args = new JSONArray().put("CAMERA");
+        ExecutorService readers = Executors.newFixedThreadPool(THREADS);
+        final Stress.Outcomes outcomes = new Stress.Outcomes();
+
+        try {
+            for (int i = 0; i < THREADS; i++) {
+                readers.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        while (running.get()) {
+                            try {
+                                diagnostic.execute("getPermissionAuthorizationStatus", args,
+                                    new CallbackContext("Reader", cordova.getWebView()));
+                            } catch (Exception e) {
+                                throw new RuntimeException(e);
+                            }
+                        }
+                    }
+                });
+            }
+
+            for (int i = 0; i < ITERATIONS * 10; i++) {
+                // Readers compute the status again while the user changes the permission in the settings and goes
+                // back to the app. A status computed before the change must not be cached after the resume.
+                boolean granted = i % 2 == 0;
+                diagnostic.onResume(true);
+                cordova.setPermissionGranted("android.permission.CAMERA", granted);
+                diagnostic.onResume(true);
+
+                CallbackContext callbackContext = cordova.getWebView().newCallbackContext();
+                diagnostic.execute("getPermissionAuthorizationStatus", args, callbackContext);
+                String status = getResult(callbackContext).getStrMessage();
+                outcomes.record(granted == Diagnostic.STATUS_GRANTED.equals(status) ? "fresh" : "stale");
+            }
+        } finally {
+            running.set(false);
+            readers.shutdown();
+            readers.awaitTermination(10, TimeUnit.SECONDS);
+            cordova.getWebView().getAllResults().remove("Reader");
+        }
+
+        outcomes.print("status after resume");
+        assertEquals(0, outcomes.get("stale"));
+    }
+
+    @Test
+    public void concurrentStorageProfilesAreConsistent() throws Exception {
+        // Tree of 4 x 4 directories with 3 files each. The cache directory is the same as the files directory.
+        for (int i = 0; i < 4; i++) {
+            for (int j = 0; j < 4; j++) {
+                File directory = new File(folder.getRoot(), "dir" + i + "/sub" + j);
+                assertTrue(directory.mkdirs());
+                for (int k = 0; k < 3; k++) {
+                    Files.write(new File(directory, "file" + k).toPath(), new byte[100 * (i + j + k + 1)]);
+                }
+            }
+        }
+
+        // The flight recorder is started once per process, its file may be in this folder. Wait for it to be created
+        // and count it too.
+        FlightRecorder.getPreviousSession(10000);
+        final Set<String> directories = new HashSet<String>();
+        final long[] expected = new long[2];
+        Files.walkFileTree(folder.getRoot().toPath(), new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) {
+                directories.add(directory.toFile().getAbsolutePath());
+
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                expected[0] += attributes.size();
+                expected[1]++;
+
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        final ConcurrentLinkedQueue<CallbackContext> callbackContexts = new ConcurrentLinkedQueue<CallbackContext>();
+
+        Stress.run(THREADS, ITERATIONS / 10, new Stress.Actor() {
+            @Override
+            public void act(int thread, int iteration) throws Exception {
+                CallbackContext callbackContext = cordova.getWebView().newCallbackContext();
+                diagnostic.execute("getStorageProfile", new JSONArray().put(iteration % 3 == 0), callbackContext);
+                callbackContexts.add(callbackContext);
+            }
+        });
+
+        assertTrue("Lost callbacks", Stress.await(new Stress.Condition() {
+            @Override
+            public boolean isMet() {
+                for (CallbackContext callbackContext : callbackContexts) {
+                    if (!cordova.getWebView().hasResult(callbackContext)) {
+                        return false;
+                    }
+                }
+
+                return true;
+            }
+        }));
+
+        for (CallbackContext callbackContext : callbackContexts) {
+            PluginResult result = getResult(callbackContext);
+            assertEquals(result.getMessage(), PluginResult.Status.OK.ordinal(), result.getStatus());
+            JSONObject files = new JSONObject(result.getMessage()).getJSONObject("usage").getJSONObject("files");
+            assertEquals(expected[0], files.getLong("bytes"));
+            assertEquals(expected[1], files.getLong("files"));
+        }
+        assertEquals(directories, diagnostic.directoryUsageCache.keySet());
+    }
+
+    @Test
+    public void requestIdsAreNotShared() throws Exception {
+        final ConcurrentLinkedQueue<Integer> requestIds = new ConcurrentLinkedQueue<Integer>();
+
+        Stress.run(THREADS, ITERATIONS, new Stress.Actor() {
+            @Override
+            public void act(int thread, int iteration) throws Exception {
+                requestIds.add(diagnostic.storeContextByRequestId(cordova.getWebView().newCallbackContext()));
+            }
+        });
+
+        assertEquals(THREADS * ITERATIONS, new HashSet<Integer>(requestIds).size());
+        assertEquals(THREADS * ITERATIONS, diagnostic.callbackContexts.size());
+        for (int requestId : requestIds) {
+            diagnostic.clearRequest(requestId);
+        }
+        assertTrue(diagnostic.callbackContexts.isEmpty());
+        assertTrue(diagnostic.permissionStatuses.isEmpty());
+    }
+
+    @Test
+    public void currentContextIsNotKeptInPoolThreads() throws Exception {
+        ExecutorService thread = Executors.newSingleThreadExecutor();
+
+        try {
+            CallbackContext leaked = thread.submit(new Callable<CallbackContext>() {
+                @Override
+                public CallbackContext call() throws Exception {
+                    diagnostic.execute(
+                        "getPermissionAuthorizationStatus",
+                        new JSONArray().put("CAMERA"),
+                        cordova.getWebView().newCallbackContext()
+                    );
+
+                    // The context of a finished action must not be reachable from the thread.
+                    return diagnostic.currentContext.get();
+                }
+            }).get();
+
+            assertNull(leaked);
+        } finally {
+            thread.shutdownNow();
+        }
+    }
+
+    @Test
+    public void reportThroughput() throws Exception {
+        final JSONArray args = new JSONArray().put(new JSONArray().put("CAMERA").put("READ_CONTACTS"));
+
+        Stress.reportThroughput("getPermissionsAuthorizationStatus", new Stress.Actor() {
+            @Override
+            public void act(int thread, int iteration) throws Exception {
+                diagnostic.execute("getPermissionsAuthorizationStatus", args, new CallbackContext("Throughput", cordova.getWebView()));
+            }
+        });
+
+        Stress.reportThroughput("storeContextByRequestId and clearRequest", new Stress.Actor() {
+            @Override
+            public void act(int thread, int iteration) throws Exception {
+                diagnostic.clearRequest(diagnostic.storeContextByRequestId(cordova.getWebView().newCallbackContext()));
+            }
+        });
+        cordova.getWebView().getAllResults().clear();
+    }
+
+    private PluginResult getResult(CallbackContext callbackContext) {
+        List<PluginResult> results = cordova.getWebView().getResults(callbackContext.getCallbackId());
+        assertEquals("Results of a callback", 1, results.size());
+
+        return results.get(0);
+    }
+
+    private static class Request {
+
+        private final JSONArray permissions;
+        private final CallbackContext callbackContext;
+
+        Request(JSONArray permissions, CallbackContext callbackContext) {
+            this.permissions = permissions;
+            this.callbackContext = callbackContext;
+        }
+
+    }
+
+}
@@ -0,0 +1,169 @@
+// (C) Copyright 2015 Moodle Pty Ltd.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.moodle.moodlemobile;
+
+import android.app.Activity;
+import android.content.BroadcastReceiver;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.os.Looper;
+
+import java.io.File;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Activity that is also the application context. Its UI thread is a single thread executor.
+ */
+public class FakeActivity extends Activity {
+
+    private final ConcurrentHashMap<String, SharedPreferences> preferences =
+        new ConcurrentHashMap<String, SharedPreferences>();
+    private final File filesDir;
+    private final ApplicationInfo applicationInfo = new ApplicationInfo();
+    private final ExecutorService uiThread = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Looper.prepareMainLooper();
+                    runnable.run();
+                }
+            }, "main");
+        }
+    });
+    private final PackageManager packageManager = new PackageManager() {
+        @Override
+        public PackageInfo getPackageInfo(String packageName, int flags) {
+            PackageInfo info = new PackageInfo();
+            info.versionName = "stress";
+            info.versionCode = 1;
+            info.requestedPermissions = Diagnostic.permissionsMap.keySet().toArray(new String[0]);
+
+            return info;
+        }
+
+        @Override
+        public ApplicationInfo getApplicationInfo(String packageName, int flags) {
+            return applicationInfo;
+        }
+
+        @Override
+        public Intent getLaunchIntentForPackage(String packageName) {
+            return new Intent();
+        }
+    };
+
+    public FakeActivity(File filesDir) {
+        this.filesDir = filesDir;
+        applicationInfo.targetSdkVersion = 34;
+        applicationInfo.minSdkVersion = 24;
+    }
+
+    /**
+     * Stop the UI thread, waiting for the pending tasks.
+     */
+    public void shutdown() throws InterruptedException {
+        uiThread.shutdown();
+        uiThread.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void runOnUiThread(Runnable action) {
+        uiThread.execute(action);
+    }
+
+    @Override
+    public Context getApplicationContext() {
+        return this;
+    }
+
+    @Override
+    public SharedPreferences getSharedPreferences(String name, int mode) {
+        SharedPreferences created = new FakeSharedPreferences();
+        SharedPreferences existing = preferences.putIfAbsent(name, created);
+
+        return existing != null ? existing : created;
+    }
+
+    @Override
+    public Object getSystemService(String name) {
+        return null;
+    }
+
+    @Override
+    public PackageManager getPackageManager() {
+        return packageManager;
+    }
+
+    @Override
+    public String getPackageName() {
+        return "com.moodle.moodlemobile.stress";
+    }
+
+    @Override
+    public ApplicationInfo getApplicationInfo() {
+        return applicationInfo;
+    }
+
+    @Override
+    public File getFilesDir() {
+        return filesDir;
+    }
+
+    @Override
+    public File getCacheDir() {
+        return filesDir;
+    }
+
+    @Override
+    public File getExternalFilesDir(String type) {
+        return null;
+    }
+
+    @Override
+    public File getExternalCacheDir() {
+        return null;
+    }
+
+    @Override
+    public ContentResolver getContentResolver() {
+        return null;
+    }
+
+    @Override
+    public Intent registerReceiver(BroadcastReceiver receiver, IntentFilter filter) {
+        return null;
+    }
+
+    @Override
+    public void unregisterReceiver(BroadcastReceiver receiver) {
+    }
+
+    @Override
+    public void startActivity(Intent intent) {
+    }
+
+}
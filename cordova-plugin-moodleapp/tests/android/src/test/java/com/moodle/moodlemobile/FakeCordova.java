@@ -0,0 +1,155 @@
+// (C) Copyright 2015 Moodle Pty Ltd.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.moodle.moodlemobile;
+
+import android.app.Activity;
+import android.content.Context;
+import android.content.pm.PackageManager;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.cordova.CordovaInterface;
+import org.apache.cordova.CordovaPlugin;
+import org.apache.cordova.CordovaPreferences;
+import org.json.JSONException;
+
+/**
+ * Cordova host with a real thread pool. Permission requests are answered in the UI thread, like the system dialog:
+ * every permission is granted except RECORD_AUDIO, which is always denied.
+ */
+public class FakeCordova implements CordovaInterface {
+
+    public static final String DENIED_PERMISSION = "android.permission.RECORD_AUDIO";
+    private static final long PERMISSION_CHECK_LATENCY = 20000; // Nanoseconds.
+
+    private final FakeActivity activity;
+    private final FakeWebView webView = new FakeWebView();
+    private final CordovaPreferences preferences = new CordovaPreferences();
+    private final ExecutorService threadPool = Executors.newCachedThreadPool();
+    private final AtomicInteger permissionRequests = new AtomicInteger();
+    private final Set<String> grantedPermissions = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    public FakeCordova(File filesDir) {
+        this.activity = new FakeActivity(filesDir);
+    }
+
+    /**
+     * Create and initialize a plugin, and register it in the plugin manager.
+     *
+     * @param service Service name.
+     * @param plugin Plugin.
+     * @return The plugin.
+     */
+    public <T extends CordovaPlugin> T initializePlugin(String service, T plugin) {
+        plugin.privateInitialize(service, this, webView, preferences);
+        webView.getPluginManager().addPlugin(service, plugin);
+
+        return plugin;
+    }
+
+    public FakeWebView getWebView() {
+        return webView;
+    }
+
+    /**
+     * Grant or revoke a permission, as if the user changed it in the settings.
+     *
+     * @param permission Android permission.
+     * @param granted Whether it's granted.
+     */
+    public void setPermissionGranted(String permission, boolean granted) {
+        if (granted) {
+            grantedPermissions.add(permission);
+        } else {
+            grantedPermissions.remove(permission);
+        }
+    }
+
+    public int getPermissionRequests() {
+        return permissionRequests.get();
+    }
+
+    /**
+     * Stop the threads, waiting for the pending tasks.
+     */
+    public void shutdown() throws InterruptedException {
+        threadPool.shutdown();
+        threadPool.awaitTermination(10, TimeUnit.SECONDS);
+        activity.shutdown();
+    }
+
+    @Override
+    public Activity getActivity() {
+        return activity;
+    }
+
+    @Override
+    public Context getContext() {
+        return activity;
+    }
+
+    @Override
+    public ExecutorService getThreadPool() {
+        return threadPool;
+    }
+
+    @Override
+    public Object onMessage(String id, Object data) {
+        return null;
+    }
+
+    @Override
+    public void requestPermissions(final CordovaPlugin plugin, final int requestCode, final String[] permissions) {
+        permissionRequests.incrementAndGet();
+        activity.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                int[] grantResults = new int[permissions.length];
+                for (int i = 0; i < permissions.length; i++) {
+                    grantResults[i] = DENIED_PERMISSION.equals(permissions[i])
+                        ? PackageManager.PERMISSION_DENIED
+                        : PackageManager.PERMISSION_GRANTED;
+                }
+
+                try {
+                    plugin.onRequestPermissionResult(requestCode, permissions, grantResults);
+                } catch (JSONException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+    }
+
+    @Override
+    public boolean hasPermission(String permission) {
+        boolean granted = grantedPermissions.contains(permission);
+
+        // In a device it's a call to the system server, the permission can change before the result is used.
+        long end = System.nanoTime() + PERMISSION_CHECK_LATENCY;
+        while (System.nanoTime() < end) {
+            Thread.yield();
+        }
+
+        return granted;
+    }
+
+}
@@ -0,0 +1,124 @@
+// (C) Copyright 2015 Moodle Pty Ltd.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.moodle.moodlemobile;
+
+import android.content.SharedPreferences;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * In-memory SharedPreferences. Like the real ones, reads see the last applied edit and each edit is applied atomically.
+ */
+public class FakeSharedPreferences implements SharedPreferences {
+
+    private final Map<String, Object> values = new HashMap<String, Object>();
+
+    @Override
+    public synchronized Map<String, ?> getAll() {
+        return new HashMap<String, Object>(values);
+    }
+
+    @Override
+    public synchronized String getString(String key, String defValue) {
+        Object value = values.get(key);
+
+        return value instanceof String ? (String) value : defValue;
+    }
+
+    @Override
+    public synchronized boolean getBoolean(String key, boolean defValue) {
+        Object value = values.get(key);
+
+        return value instanceof Boolean ? (Boolean) value : defValue;
+    }
+
+    @Override
+    public synchronized boolean contains(String key) {
+        return values.containsKey(key);
+    }
+
+    @Override
+    public Editor edit() {
+        return new FakeEditor();
+    }
+
+    private synchronized void applyEdit(boolean clear, Set<String> removals, Map<String, Object> changes) {
+        if (clear) {
+            values.clear();
+        }
+        for (String key : removals) {
+            values.remove(key);
+        }
+        values.putAll(changes);
+    }
+
+    /**
+     * Editor that collects the changes and applies them in a single step. Removals are applied before changes.
+     */
+    private class FakeEditor implements Editor {
+
+        private final Map<String, Object> changes = new HashMap<String, Object>();
+        private final Set<String> removals = new HashSet<String>();
+        private boolean clear = false;
+
+        @Override
+        public synchronized Editor putString(String key, String value) {
+            changes.put(key, value);
+
+            return this;
+        }
+
+        @Override
+        public synchronized Editor putBoolean(String key, boolean value) {
+            changes.put(key, value);
+
+            return this;
+        }
+
+        @Override
+        public synchronized Editor remove(String key) {
+            removals.add(key);
+
+            return this;
+        }
+
+        @Override
+        public synchronized Editor clear() {
+            clear = true;
+
+            return this;
+        }
+
+        @Override
+        public synchronized boolean commit() {
+            applyEdit(clear, removals, changes);
+            clear = false;
+            removals.clear();
+            changes.clear();
+
+            return true;
+        }
+
+        @Override
+        public void apply() {
+            commit();
+        }
+
+    }
+
+}
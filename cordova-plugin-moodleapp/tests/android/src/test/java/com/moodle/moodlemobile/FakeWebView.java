@@ -0,0 +1,112 @@
+// (C) Copyright 2015 Moodle Pty Ltd.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.moodle.moodlemobile;
+
+import android.view.View;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.CordovaWebView;
+import org.apache.cordova.PluginManager;
+import org.apache.cordova.PluginResult;
+
+/**
+ * WebView that records the results sent to each callback, so tests can detect lost and duplicated replies.
+ */
+public class FakeWebView implements CordovaWebView {
+
+    private final PluginManager pluginManager = new PluginManager();
+    private final ConcurrentHashMap<String, List<PluginResult>> results = new ConcurrentHashMap<String, List<PluginResult>>();
+    private final AtomicLong callbackCount = new AtomicLong();
+
+    /**
+     * Create a callback context with a new ID.
+     *
+     * @return Callback context.
+     */
+    public CallbackContext newCallbackContext() {
+        return new CallbackContext("Stress" + callbackCount.incrementAndGet(), this);
+    }
+
+    /**
+     * Get the results sent to a callback.
+     *
+     * @param callbackId Callback ID.
+     * @return Results, in the order they were sent.
+     */
+    public List<PluginResult> getResults(String callbackId) {
+        List<PluginResult> callbackResults = results.get(callbackId);
+        if (callbackResults == null) {
+            return new ArrayList<PluginResult>();
+        }
+
+        synchronized (callbackResults) {
+            return new ArrayList<PluginResult>(callbackResults);
+        }
+    }
+
+    /**
+     * Check whether a callback has received a result. CallbackContext is finished before the result is sent, so tests
+     * must wait for this instead.
+     *
+     * @param callbackContext Callback context.
+     * @return Whether a result was sent to the callback.
+     */
+    public boolean hasResult(CallbackContext callbackContext) {
+        return !getResults(callbackContext.getCallbackId()).isEmpty();
+    }
+
+    /**
+     * Get the results of all callbacks.
+     *
+     * @return Results by callback ID.
+     */
+    public Map<String, List<PluginResult>> getAllResults() {
+        return results;
+    }
+
+    @Override
+    public void sendPluginResult(PluginResult pluginResult, String callbackId) {
+        List<PluginResult> created = new ArrayList<PluginResult>();
+        List<PluginResult> callbackResults = results.putIfAbsent(callbackId, created);
+        if (callbackResults == null) {
+            callbackResults = created;
+        }
+
+        synchronized (callbackResults) {
+            callbackResults.add(pluginResult);
+        }
+    }
+
+    @Override
+    public PluginManager getPluginManager() {
+        return pluginManager;
+    }
+
+    @Override
+    public View getView() {
+        return null;
+    }
+
+    @Override
+    public void loadUrl(String url) {
+    }
+
+}
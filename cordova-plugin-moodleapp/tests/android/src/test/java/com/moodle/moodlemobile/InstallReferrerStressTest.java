@@ -0,0 +1,242 @@
+// (C) Copyright 2015 Moodle Pty Ltd.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.moodle.moodlemobile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+
+import com.android.installreferrer.api.InstallReferrerClient;
+import com.android.installreferrer.api.InstallReferrerStateListener;
+import com.android.installreferrer.api.ReferrerDetails;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Stress tests of the pending callbacks queue of InstallReferrer: concurrent calls must share one connection, and every
+ * call must be answered exactly once with the outcome of the connection, whatever it is.
+ */
+public class InstallReferrerStressTest {
+
+    private static final int THREADS = 8;
+    private static final int ROUNDS = 200;
+    private static final String REFERRER = "utm_source=stress";
+
+    /**
+     * How the fake client answers a connection.
+     */
+    private enum Outcome {
+        OK(null),
+        SERVICE_UNAVAILABLE("Referrer service unavailable."),
+        FEATURE_NOT_SUPPORTED("Referrer feature not supported."),
+        DISCONNECTED("Referrer service disconnected.");
+
+        private final String error;
+
+        Outcome(String error) {
+            this.error = error;
+        }
+    }
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ExecutorService serviceThread = Executors.newSingleThreadExecutor();
+    private final AtomicInteger connections = new AtomicInteger();
+    private volatile Outcome outcome = Outcome.OK;
+    private volatile boolean synchronous = false;
+    private FakeCordova cordova;
+
+    @Before
+    public void setUp() throws Exception {
+        cordova = new FakeCordova(folder.getRoot());
+        InstallReferrerClient.factory = new InstallReferrerClient.Factory() {
+            @Override
+            public InstallReferrerClient create(Context context) {
+                return new FakeClient();
+            }
+        };
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        InstallReferrerClient.factory = null;
+        serviceThread.shutdownNow();
+        cordova.shutdown();
+    }
+
+    @Test
+    public void everyCallIsAnsweredOnce() throws Exception {
+        Outcome[] outcomes = Outcome.values();
+        Stress.Outcomes replies = new Stress.Outcomes();
+
+        for (int round = 0; round < ROUNDS; round++) {
+            outcome = outcomes[round % outcomes.length];
+            synchronous = (round / outcomes.length) % 2 == 1;
+            connections.set(0);
+
+            final InstallReferrer plugin = cordova.initializePlugin("InstallReferrer", new InstallReferrer());
+            final CallbackContext[] callbackContexts = new CallbackContext[THREADS];
+            for (int i = 0; i < THREADS; i++) {
+                callbackContexts[i] = cordova.getWebView().newCallbackContext();
+            }
+
+            Stress.run(THREADS, 1, new Stress.Actor() {
+                @Override
+                public void act(int thread, int iteration) throws Exception {
+                    plugin.execute("getReferrer", new JSONArray(), callbackContexts[thread]);
+                }
+            });
+
+            assertTrue("Lost callbacks in round " + round + " (" + outcome + ")", Stress.await(new Stress.Condition() {
+                @Override
+                public boolean isMet() {
+                    for (CallbackContext callbackContext : callbackContexts) {
+                        if (!cordova.getWebView().hasResult(callbackContext)) {
+                            return false;
+                        }
+                    }
+
+                    return true;
+                }
+            }));
+
+            for (CallbackContext callbackContext : callbackContexts) {
+                List<PluginResult> results = cordova.getWebView().getResults(callbackContext.getCallbackId());
+                assertEquals("Results of a callback in round " + round, 1, results.size());
+                PluginResult result = results.get(0);
+
+                if (outcome == Outcome.OK) {
+                    assertEquals(PluginResult.Status.OK.ordinal(), result.getStatus());
+                    assertEquals(REFERRER, new JSONObject(result.getMessage()).getString("referrer"));
+                } else {
+                    assertEquals(PluginResult.Status.ERROR.ordinal(), result.getStatus());
+                    assertEquals(JSONObject.quote(outcome.error), result.getMessage());
+                }
+                replies.record(outcome + (synchronous ? " sync" : " async"));
+            }
+
+            if (outcome == Outcome.OK) {
+                // Calls done while connecting wait for it, later calls use the cached result.
+                assertEquals("Connections in round " + round, 1, connections.get());
+            } else {
+                // Failures aren't cached, but each connection must answer at least one call.
+                assertTrue("Connections in round " + round, connections.get() >= 1 && connections.get() <= THREADS);
+            }
+        }
+
+        replies.print("getReferrer");
+    }
+
+    @Test
+    public void reportThroughput() throws Exception {
+        final InstallReferrer plugin = cordova.initializePlugin("InstallReferrer", new InstallReferrer());
+        final CallbackContext first = cordova.getWebView().newCallbackContext();
+        plugin.execute("getReferrer", new JSONArray(), first);
+        assertTrue(Stress.await(new Stress.Condition() {
+            @Override
+            public boolean isMet() {
+                return cordova.getWebView().hasResult(first);
+            }
+        }));
+
+        Stress.reportThroughput("getReferrer with a cached result", new Stress.Actor() {
+            @Override
+            public void act(int thread, int iteration) throws Exception {
+                plugin.execute("getReferrer", new JSONArray(), cordova.getWebView().newCallbackContext());
+            }
+        });
+        cordova.getWebView().getAllResults().clear();
+    }
+
+    /**
+     * Client that answers connections with the current outcome, in a service thread after a random delay, or in the
+     * calling thread.
+     */
+    private class FakeClient extends InstallReferrerClient {
+
+        @Override
+        public void startConnection(final InstallReferrerStateListener listener) {
+            connections.incrementAndGet();
+            final Outcome connectionOutcome = outcome;
+            final long delay = ThreadLocalRandom.current().nextLong(500);
+            Runnable reply = new Runnable() {
+                @Override
+                public void run() {
+                    switch (connectionOutcome) {
+                        case OK:
+                            listener.onInstallReferrerSetupFinished(InstallReferrerResponse.OK);
+                            break;
+                        case SERVICE_UNAVAILABLE:
+                            listener.onInstallReferrerSetupFinished(InstallReferrerResponse.SERVICE_UNAVAILABLE);
+                            break;
+                        case FEATURE_NOT_SUPPORTED:
+                            listener.onInstallReferrerSetupFinished(InstallReferrerResponse.FEATURE_NOT_SUPPORTED);
+                            break;
+                        case DISCONNECTED:
+                            listener.onInstallReferrerServiceDisconnected();
+                            break;
+                    }
+                }
+            };
+
+            if (synchronous) {
+                reply.run();
+
+                return;
+            }
+
+            serviceThread.execute(new Runnable() {
+                @Override
+                public void run() {
+                    // Give other calls time to queue.
+                    long end = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(delay);
+                    while (System.nanoTime() < end) {
+                        Thread.yield();
+                    }
+                }
+            });
+            serviceThread.execute(reply);
+        }
+
+        @Override
+        public void endConnection() {
+        }
+
+        @Override
+        public ReferrerDetails getInstallReferrer() {
+            return new ReferrerDetails(REFERRER);
+        }
+
+    }
+
+}
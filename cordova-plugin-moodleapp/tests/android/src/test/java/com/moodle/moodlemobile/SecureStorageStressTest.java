@@ -0,0 +1,190 @@
+// (C) Copyright 2015 Moodle Pty Ltd.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.moodle.moodlemobile;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Stress tests of the per collection locks of SecureStorage: read-modify-write operations in the same collection must
+ * not lose writes, and readers must never see half of an update.
+ */
+public class SecureStorageStressTest {
+
+    private static final int THREADS = 8;
+    private static final int ITERATIONS = 500;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private FakeCordova cordova;
+    private SecureStorage secureStorage;
+
+    @Before
+    public void setUp() throws Exception {
+        cordova = new FakeCordova(folder.getRoot());
+        secureStorage = cordova.initializePlugin("SecureStorage", new SecureStorage());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        cordova.shutdown();
+    }
+
+    @Test
+    public void compareAndSetDoesNotLoseIncrements() throws Exception {
+        final Stress.Outcomes outcomes = new Stress.Outcomes();
+
+        Stress.run(THREADS, ITERATIONS, new Stress.Actor() {
+            @Override
+            public void act(int thread, int iteration) throws Exception {
+                // Retry until the increment is applied, like a JS caller would.
+                while (true) {
+                    String current = get("shared", "counter");
+                    String next = String.valueOf(current == null ? 1 : Integer.parseInt(current) + 1);
+                    if (compareAndSet("shared", "counter", current, next)) {
+                        outcomes.record("swapped");
+
+                        return;
+                    }
+                    outcomes.record("retried");
+                }
+            }
+        });
+
+        outcomes.print("compareAndSet increments");
+        assertEquals(THREADS * ITERATIONS, outcomes.get("swapped"));
+        assertEquals(String.valueOf(THREADS * ITERATIONS), get("shared", "counter"));
+    }
+
+    @Test
+    public void storesInTheSameCollectionAreNotLost() throws Exception {
+        Stress.run(THREADS, ITERATIONS, new Stress.Actor() {
+            @Override
+            public void act(int thread, int iteration) throws Exception {
+                JSONObject data = new JSONObject();
+                data.put("thread" + thread + "_" + iteration, String.valueOf(iteration));
+                execute("store", new JSONArray().put(data).put("shared"));
+            }
+        });
+
+        for (int thread = 0; thread < THREADS; thread++) {
+            for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+                assertEquals(String.valueOf(iteration), get("shared", "thread" + thread + "_" + iteration));
+            }
+        }
+    }
+
+    @Test
+    public void updatesAreNotTorn() throws Exception {
+        final Stress.Outcomes outcomes = new Stress.Outcomes();
+
+        Stress.run(THREADS, ITERATIONS, new Stress.Actor() {
+            @Override
+            public void act(int thread, int iteration) throws Exception {
+                if (thread == 0) {
+                    JSONObject data = new JSONObject();
+                    data.put("a", String.valueOf(iteration));
+                    data.put("b", String.valueOf(iteration));
+                    execute("update", new JSONArray().put(data).put(new JSONArray()).put("shared"));
+
+                    return;
+                }
+
+                JSONObject values = getValues("shared", "a", "b");
+                String a = values.optString("a", null);
+                String b = values.optString("b", null);
+                outcomes.record(a == null ? "empty" : a.equals(b) ? "consistent" : "torn");
+            }
+        });
+
+        outcomes.print("update vs get");
+        assertEquals(0, outcomes.get("torn"));
+    }
+
+    @Test
+    public void reportThroughput() throws Exception {
+        Stress.reportThroughput("compareAndSet in one collection", new Stress.Actor() {
+            @Override
+            public void act(int thread, int iteration) throws Exception {
+                compareAndSet("shared", "key" + thread, null, "value");
+                compareAndSet("shared", "key" + thread, "value", null);
+            }
+        });
+
+        Stress.reportThroughput("compareAndSet in a collection per thread", new Stress.Actor() {
+            @Override
+            public void act(int thread, int iteration) throws Exception {
+                compareAndSet("thread" + thread, "key", null, "value");
+                compareAndSet("thread" + thread, "key", "value", null);
+            }
+        });
+    }
+
+    /**
+     * Execute an action and get its only result.
+     *
+     * @param action Action.
+     * @param args Arguments.
+     * @return Result.
+     */
+    private PluginResult execute(String action, JSONArray args) throws Exception {
+        CallbackContext callbackContext = cordova.getWebView().newCallbackContext();
+        secureStorage.execute(action, args, callbackContext);
+
+        // SecureStorage replies synchronously, exactly once.
+        List<PluginResult> results = cordova.getWebView().getResults(callbackContext.getCallbackId());
+        assertEquals("Results of " + action, 1, results.size());
+        assertEquals(action + " failed: " + results.get(0).getMessage(),
+            PluginResult.Status.OK.ordinal(), results.get(0).getStatus());
+
+        return results.get(0);
+    }
+
+    private JSONObject getValues(String collection, String... names) throws Exception {
+        JSONArray namesArray = new JSONArray();
+        for (String name : names) {
+            namesArray.put(name);
+        }
+
+        return new JSONObject(execute("get", new JSONArray().put(namesArray).put(collection)).getMessage());
+    }
+
+    private String get(String collection, String name) throws Exception {
+        return getValues(collection, name).optString(name, null);
+    }
+
+    private boolean compareAndSet(String collection, String name, String expected, String value) throws Exception {
+        JSONArray args = new JSONArray()
+            .put(name)
+            .put(expected == null ? JSONObject.NULL : expected)
+            .put(value == null ? JSONObject.NULL : value)
+            .put(collection);
+
+        return Boolean.parseBoolean(execute("compareAndSet", args).getMessage());
+    }
+
+}
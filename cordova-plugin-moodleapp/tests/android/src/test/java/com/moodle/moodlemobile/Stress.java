@@ -0,0 +1,227 @@
+// (C) Copyright 2015 Moodle Pty Ltd.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.moodle.moodlemobile;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Small jcstress-style harness: runs actors in several threads that start at the same time, counts the outcomes they
+ * observe and measures throughput as the number of threads grows.
+ */
+public final class Stress {
+
+    public static final int[] THREAD_COUNTS = { 1, 2, 4, 8, 16 };
+    private static final long THROUGHPUT_DURATION = 300;
+    private static final long TIMEOUT = 60;
+
+    private Stress() {}
+
+    /**
+     * Code run by each thread.
+     */
+    public interface Actor {
+
+        /**
+         * @param thread Index of the thread.
+         * @param iteration Index of the iteration in the thread.
+         */
+        void act(int thread, int iteration) throws Exception;
+
+    }
+
+    /**
+     * Condition to wait for.
+     */
+    public interface Condition {
+
+        boolean isMet() throws Exception;
+
+    }
+
+    /**
+     * Run an actor in several threads. Threads start at the same time to maximize contention.
+     *
+     * @param threads Number of threads.
+     * @param iterations Number of iterations of each thread.
+     * @param actor Actor.
+     */
+    public static void run(int threads, final int iterations, final Actor actor) throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+
+        try {
+            for (int i = 0; i < threads; i++) {
+                final int thread = i;
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        start.await();
+                        for (int iteration = 0; iteration < iterations; iteration++) {
+                            actor.act(thread, iteration);
+                        }
+
+                        return null;
+                    }
+                }));
+            }
+
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(TIMEOUT, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Measure how many iterations per second an actor does using several threads.
+     *
+     * @param threads Number of threads.
+     * @param duration Duration of the measure, in milliseconds.
+     * @param actor Actor.
+     * @return Iterations per second, adding all threads.
+     */
+    public static double measureThroughput(int threads, long duration, final Actor actor) throws Exception {
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicLong operations = new AtomicLong();
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+
+        try {
+            for (int i = 0; i < threads; i++) {
+                final int thread = i;
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        start.await();
+                        int iteration = 0;
+                        while (running.get()) {
+                            actor.act(thread, iteration++);
+                        }
+                        operations.addAndGet(iteration);
+
+                        return null;
+                    }
+                }));
+            }
+
+            long startTime = System.nanoTime();
+            start.countDown();
+            Thread.sleep(duration);
+            running.set(false);
+            for (Future<?> future : futures) {
+                future.get(TIMEOUT, TimeUnit.SECONDS);
+            }
+
+            return operations.get() / ((System.nanoTime() - startTime) / 1e9);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Measure the throughput of an actor with 1 to 16 threads and print it.
+     *
+     * @param name Name of the measure.
+     * @param actor Actor.
+     */
+    public static void reportThroughput(String name, Actor actor) throws Exception {
+        StringBuilder report = new StringBuilder("Throughput of " + name + " (ops/s):");
+        double singleThread = 0;
+
+        // Warm up, so the first measure isn't penalized by the JIT.
+        measureThroughput(1, THROUGHPUT_DURATION, actor);
+
+        for (int threads : THREAD_COUNTS) {
+            double throughput = measureThroughput(threads, THROUGHPUT_DURATION, actor);
+            if (threads == 1) {
+                singleThread = throughput;
+            }
+            report.append(String.format("%n  %2d threads: %,12.0f (x%.2f)", threads, throughput, throughput / singleThread));
+        }
+
+        System.out.println(report);
+    }
+
+    /**
+     * Wait until a condition is met.
+     *
+     * @param condition Condition.
+     * @return Whether the condition was met before the timeout.
+     */
+    public static boolean await(Condition condition) throws Exception {
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT);
+
+        while (!condition.isMet()) {
+            if (System.nanoTime() > end) {
+                return false;
+            }
+            Thread.sleep(5);
+        }
+
+        return true;
+    }
+
+    /**
+     * Counts of the outcomes observed by the actors.
+     */
+    public static class Outcomes {
+
+        private final ConcurrentHashMap<String, AtomicLong> counts = new ConcurrentHashMap<String, AtomicLong>();
+
+        public void record(String outcome) {
+            AtomicLong created = new AtomicLong();
+            AtomicLong count = counts.putIfAbsent(outcome, created);
+            (count != null ? count : created).incrementAndGet();
+        }
+
+        public long get(String outcome) {
+            AtomicLong count = counts.get(outcome);
+
+            return count != null ? count.get() : 0;
+        }
+
+        /**
+         * Print the outcomes, sorted by name.
+         *
+         * @param name Name of the test.
+         */
+        public void print(String name) {
+            StringBuilder report = new StringBuilder("Outcomes of " + name + ":");
+            for (Map.Entry<String, AtomicLong> entry : new TreeMap<String, AtomicLong>(counts).entrySet()) {
+                report.append(String.format("%n  %-20s %,10d", entry.getKey(), entry.getValue().get()));
+            }
+
+            System.out.println(report);
+        }
+
+    }
+
+}
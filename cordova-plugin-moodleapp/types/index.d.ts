@@ -15,6 +15,8 @@
 import { InstallReferrer } from '../src/ts/plugins/InstallReferrer';
 import { SecureStorage as SecureStorageImpl } from '../src/ts/plugins/SecureStorage';
 import { Diagnostic } from '../src/ts/plugins/Diagnostic';
+import { Bridge } from '../src/ts/plugins/Bridge';
+import { Display } from '../src/ts/plugins/Display';
 
 declare global {
 
@@ -22,6 +24,8 @@ declare global {
         secureStorage: SecureStorageImpl;
         installReferrer: InstallReferrer;
         diagnostic: Diagnostic;
+        bridge: Bridge;
+        display: Display;
     }
 
     interface Cordova {
@@ -116,6 +116,50 @@ export class SecureStorageMock implements SecureStorage {
         }
     }
 
+    /**
+     * Set a value only if its current value is the expected one.
+     *
+     * @param name Name of the value.
+     * @param expected Expected current value, null if the value shouldn't exist.
+     * @param value New value, null to delete it.
+     * @param collection The collection where the value is stored.
+     * @returns Whether the current value matched and it was replaced.
+     */
+    async compareAndSet(name: string, expected: string | null, value: string | null, collection: string): Promise<boolean> {
+        if (!name) {
+            return false;
+        }
+
+        const prefixedName = this.getPrefixedName(name, collection);
+        if (localStorage.getItem(prefixedName) !== expected) {
+            return false;
+        }
+
+        if (value === null) {
+            localStorage.removeItem(prefixedName);
+        } else {
+            localStorage.setItem(prefixedName, value);
+        }
+
+        return true;
+    }
+
+    /**
+     * Store and delete several values.
+     *
+     * @param data Object with values to store, in format name -> value. Null or undefined valid values will be ignored.
+     * @param names Names to delete. If a name is also in data, it will be stored.
+     * @param collection The collection where to apply the changes.
+     */
+    async update(data: Record<string, string>, names: string[], collection: string): Promise<void> {
+        // Store first, it will throw if some value isn't valid. It also removes null values from data, so names with a
+        // null value are deleted like in the native plugin.
+        await this.store(data, collection);
+
+        const deleteNames = names.filter((name) => !(name in data));
+        await this.delete(deleteNames, collection);
+    }
+
     /**
      * Delete all values for a certain collection.
      *